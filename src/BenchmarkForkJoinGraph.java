@@ -0,0 +1,80 @@
+
+import edu.washington.cse332.autograder.concurrent.*;
+
+import java.util.ArrayList;
+
+// Times graph construction and metrics for growing task counts.
+// Run with: java --enable-preview --source 21 -Xmx4g -cp <classes> BenchmarkForkJoinGraph.java
+void main() {
+    System.out.printf("%-8s %10s %12s %12s %12s%n", "shape", "tasks", "segments", "analyze ms", "metrics ms");
+    for (int tasks : new int[] { 10_000, 100_000, 1_000_000 }) {
+        // a binary split down to single elements creates 2n - 1 tasks
+        int n = (tasks + 1) / 2;
+        run("split", () -> ForkJoinPool.commonPool().invoke(new BenchmarkSum(0, n)));
+    }
+    for (int tasks : new int[] { 10_000, 100_000, 1_000_000 }) {
+        // one task forking every child, then joining them in order
+        run("fan-out", () -> ForkJoinPool.commonPool().invoke(new BenchmarkFanOut(tasks - 1)));
+    }
+}
+
+void run(String shape, Runnable r) {
+    // a million tasks log several million events; keep them all in the graph
+    var options = AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL).withEventBudget(Long.MAX_VALUE);
+    long start = System.nanoTime();
+    var result = ForkJoinAnalyzer.analyze(r, options);
+    long analyzed = System.nanoTime();
+    // what a test typically asks for, after the analysis computed the metrics once
+    var graph = result.graph();
+    graph.structuralSpeedup();
+    graph.empiricalSpeedup();
+    graph.structuralCriticalPath();
+    graph.empiricalCriticalPath();
+    graph.finalSegmentCount();
+    long queried = System.nanoTime();
+
+    System.out.printf("%-8s %10d %12.0f %12.1f %12.3f%n", shape, result.taskCount(), graph.structuralWork(),
+            (analyzed - start) / 1e6, (queried - analyzed) / 1e6);
+}
+
+class BenchmarkSum extends RecursiveTask<Long> {
+    private final int lo;
+    private final int hi;
+
+    public BenchmarkSum(int lo, int hi) {
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    @Override
+    protected Long __impl_compute() {
+        if (hi - lo <= 1)
+            return (long) lo;
+        int mid = (lo + hi) / 2;
+        BenchmarkSum left = new BenchmarkSum(lo, mid);
+        BenchmarkSum right = new BenchmarkSum(mid, hi);
+        left.fork();
+        long rightResult = right.compute();
+        return left.join() + rightResult;
+    }
+}
+
+class BenchmarkFanOut extends RecursiveAction {
+    private final int children;
+
+    public BenchmarkFanOut(int children) {
+        this.children = children;
+    }
+
+    @Override
+    protected void __impl_compute() {
+        var forked = new ArrayList<BenchmarkFanOut>(children);
+        for (int i = 0; i < children; i++) {
+            var child = new BenchmarkFanOut(0);
+            child.fork();
+            forked.add(child);
+        }
+        for (var child : forked)
+            child.join();
+    }
+}
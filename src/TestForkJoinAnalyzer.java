@@ -1,5 +1,27 @@
 
+import edu.washington.cse332.autograder.AutograderException;
+import edu.washington.cse332.autograder.GraphViz;
+import edu.washington.cse332.autograder.Output;
+import edu.washington.cse332.autograder.Test;
+import edu.washington.cse332.autograder.TestRunner;
+import edu.washington.cse332.autograder.TestSuite;
+import edu.washington.cse332.autograder.config.GraphRenderer;
+import edu.washington.cse332.autograder.config.TestOutputFormat;
 import edu.washington.cse332.autograder.concurrent.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.IntFunction;
 
 void main() {
     testLiterallyNoForkJoin();
@@ -15,6 +37,26 @@ void main() {
     testInvalidComputeJoin();
     testInvalidComputeCompute();
     testInvalidJoinNoFork();
+    testLogicalClockDeterministic();
+    testStreamingMatchesGraph();
+    testEventBudget();
+    testParallelismMatchesStructure();
+    testParallelismReportsMisuse();
+    testSchedulePrediction();
+    testSpanScaling();
+    testTraceReplay();
+    testChromeTraceExport();
+    testEventOverhead();
+    testRepeatedAnalysis();
+    testAntiPatterns();
+    testGranularity();
+    testTaskApis();
+    testInstrumentationAgent();
+    testThreads();
+    testDOTSummary();
+    testAsyncRendering();
+    testSVGRenderer();
+    testWriteDOT();
 }
 
 void testLiterallyNoForkJoin() {
@@ -319,6 +361,247 @@ void testInvalidJoinNoFork() {
     assert false : "Expected BadParallelismException was not thrown";
 }
 
+void testLogicalClockDeterministic() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        b[i] = i;
+    }
+
+    var options = AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL);
+    var first = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)), options);
+    var second = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)), options);
+
+    assert first.graph().toDOT().equals(second.graph().toDOT());
+    assert first.graph().structuralWork() == second.graph().structuralWork();
+    assert first.graph().structuralCriticalPath() == second.graph().structuralCriticalPath();
+    assert first.graph().empiricalWork() == second.graph().empiricalWork();
+    assert first.allForkedTasksJoined();
+    System.out.println("Logical structural speedup: " + first.graph().structuralSpeedup());
+}
+
+void testStreamingMatchesGraph() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        b[i] = i;
+    }
+
+    var options = AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL);
+    var graphResult = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new BadDotProduct(a, b, 0, n)), options);
+    var streamResult = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new BadDotProduct(a, b, 0, n)), options.withStreaming(true));
+
+    assert streamResult.graph() == null;
+    assert streamResult.metrics().equals(graphResult.metrics());
+    assert streamResult.allForkedTasksJoined();
+    assert streamResult.taskCount() == graphResult.taskCount();
+    System.out.println("Streaming structural speedup: " + streamResult.metrics().structuralSpeedup());
+}
+
+void testDOTSummary() {
+    var options = AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL);
+    int n = 1 << 20;
+    int[] a = new int[n];
+    int[] b = new int[n];
+
+    // small graphs: every segment, with or without a budget
+    var small = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, 10_000)),
+            options).graph();
+    assert dotNodes(small.toDOT()) == small.metrics().structuralWork();
+    assert small.toDOT(ForkJoinGraph.DEFAULT_NODE_BUDGET).equals(small.toDOT());
+
+    // over the budget: toDOT() stays exact, toDOT(int) stays within the budget
+    var large = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)),
+            options).graph();
+    assert large.metrics().structuralWork() > ForkJoinGraph.DEFAULT_NODE_BUDGET;
+    assert dotNodes(large.toDOT()) == large.metrics().structuralWork();
+    int summarized = dotNodes(large.toDOT(ForkJoinGraph.DEFAULT_NODE_BUDGET));
+    assert summarized > 0 && summarized <= ForkJoinGraph.DEFAULT_NODE_BUDGET;
+}
+
+/**
+ * Counts node statements, the lines naming one node and no edge.
+ */
+int dotNodes(String dot) {
+    return (int) dot.lines().filter(line -> line.startsWith("  \"") && !line.contains("->")).count();
+}
+
+void testAsyncRendering() {
+    GraphViz.setRenderer(GraphRenderer.JAVA);
+    try {
+        assert GraphViz.renderDOTToHTMLAsync("digraph G { a -> b; }").join()
+                .startsWith("<img src=\"data:image/svg+xml;base64,");
+        try {
+            GraphViz.renderDOTToHTMLAsync(out -> {
+                throw new IOException("no source");
+            }).join();
+            assert false;
+        } catch (CompletionException e) {
+            assert e.getCause() instanceof AutograderException;
+        }
+
+        // a test whose output fails to render fails, and so does the suite
+        var passing = runSuite(RenderedSuite.class);
+        assert passing.contains("\"name\": \"Rendered - All Tests\"");
+        var failing = runSuite(FailedRenderSuite.class);
+        assert !failing.contains("All Tests");
+        assert failing.contains("\"score\": 1,\n  \"maxscore\": 1,\n  \"status\": \"passed\",\n  \"name\": \"Failed render - rendered\"");
+        assert failing.contains("\"score\": 0,\n  \"maxscore\": 2,\n  \"status\": \"failed\",\n  \"name\": \"Failed render - broken\"");
+        assert failing.contains("AutograderException");
+    } finally {
+        GraphViz.setRenderer(GraphRenderer.AUTO);
+    }
+
+    if (!GraphViz.dotOnPath()) {
+        System.out.println("dot is not on the PATH, skipping batched dot rendering");
+        return;
+    }
+    GraphViz.setRenderer(GraphRenderer.DOT);
+    try {
+        // enough graphs at once to share dot processes, and one that fails its batch
+        var images = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 40; i++)
+            images.add(GraphViz.renderDOTToHTMLAsync("digraph G" + i + " { a -> b" + i + "; }"));
+        var broken = GraphViz.renderDOTToHTMLAsync("digraph bad { a -> }");
+        for (var image : images) {
+            var html = image.join();
+            var prefix = "<img src=\"data:image/webp;base64,";
+            assert html.startsWith(prefix) && html.endsWith("\" />");
+            var webp = Base64.getDecoder().decode(html.substring(prefix.length(), html.length() - 4));
+            long size = (webp[4] & 0xFFL) | (webp[5] & 0xFFL) << 8 | (webp[6] & 0xFFL) << 16 | (webp[7] & 0xFFL) << 24;
+            // exactly one RIFF container each
+            assert new String(webp, 0, 4, StandardCharsets.US_ASCII).equals("RIFF");
+            assert new String(webp, 8, 4, StandardCharsets.US_ASCII).equals("WEBP");
+            assert webp.length == 8 + size + (size & 1);
+        }
+        try {
+            broken.join();
+            assert false;
+        } catch (CompletionException e) {
+            assert e.getCause() instanceof AutograderException;
+        }
+    } finally {
+        GraphViz.setRenderer(GraphRenderer.AUTO);
+    }
+}
+
+/**
+ * @return the JSON {@link TestRunner} prints for {@code suite}
+ */
+String runSuite(Class<?> suite) {
+    var printed = Path.of("printed.txt");
+    boolean existed = Files.exists(printed);
+    var json = new ByteArrayOutputStream();
+    var original = System.out;
+    System.setOut(new PrintStream(json, true, StandardCharsets.UTF_8));
+    try {
+        TestRunner.runSuite(suite);
+        // the runner redirects the tests' own printing there
+        if (!existed)
+            Files.deleteIfExists(printed);
+    } catch (Exception e) {
+        throw new AssertionError(e);
+    } finally {
+        System.setOut(original);
+    }
+    return json.toString(StandardCharsets.UTF_8);
+}
+
+@TestSuite(name = "Rendered")
+public static class RenderedSuite {
+    @Test(name = "rendered", points = 1)
+    public void rendered() {
+        Output.set(GraphViz.renderDOTToHTMLAsync("digraph G { a -> b; }"), TestOutputFormat.HTML);
+    }
+}
+
+@TestSuite(name = "Failed render")
+public static class FailedRenderSuite {
+    @Test(name = "rendered", points = 1)
+    public void rendered() {
+        Output.set(GraphViz.renderDOTToHTMLAsync("digraph G { a -> b; }"), TestOutputFormat.HTML);
+    }
+
+    @Test(name = "broken", points = 2)
+    public void broken() {
+        Output.set(GraphViz.renderDOTToHTMLAsync(out -> {
+            throw new IOException("no source");
+        }), TestOutputFormat.HTML);
+    }
+}
+
+void testSVGRenderer() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    var graph = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)),
+            AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL)).graph();
+    var dot = graph.toDOT();
+
+    GraphViz.setRenderer(GraphRenderer.JAVA);
+    try {
+        // well-formed SVG with a shape and a label for every node, and a line for every edge
+        var html = GraphViz.renderDOTToHTMLAsync(dot).join();
+        var prefix = "<img src=\"data:image/svg+xml;base64,";
+        assert html.startsWith(prefix);
+        var svg = Base64.getDecoder().decode(html.substring(prefix.length(), html.length() - 4));
+        var document = javax.xml.parsers.DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new java.io.ByteArrayInputStream(svg));
+        int shapes = document.getElementsByTagName("rect").getLength()
+                + document.getElementsByTagName("ellipse").getLength();
+        assert shapes == dotNodes(dot);
+        assert document.getElementsByTagName("text").getLength() >= shapes;
+        assert document.getElementsByTagName("polyline").getLength() == dot.lines().filter(l -> l.contains("->")).count();
+
+        // a source that fails partway reports its own failure
+        try {
+            GraphViz.renderDOTToHTMLAsync(out -> {
+                out.append("digraph G { a -> b;");
+                throw new IOException("source failed");
+            }).join();
+            assert false;
+        } catch (CompletionException e) {
+            assert e.getCause() instanceof AutograderException;
+            assert e.getCause().getCause() instanceof IOException io && io.getMessage().equals("source failed");
+        }
+    } catch (Exception e) {
+        throw new AssertionError(e);
+    } finally {
+        GraphViz.setRenderer(GraphRenderer.AUTO);
+    }
+}
+
+void testWriteDOT() {
+    int n = 1 << 20;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    var graph = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)),
+            AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL)).graph();
+    var dot = graph.toDOT();
+    try {
+        // streamed and in UTF-8, the same source as the String
+        var bytes = new ByteArrayOutputStream();
+        graph.writeDOT(bytes);
+        assert bytes.toString(StandardCharsets.UTF_8).equals(dot);
+        var appended = new StringBuilder();
+        graph.toDOT(appended);
+        assert appended.toString().equals(dot);
+    } catch (IOException e) {
+        throw new UncheckedIOException(e);
+    }
+
+    GraphViz.setRenderer(GraphRenderer.JAVA);
+    try {
+        assert GraphViz.renderDOTToHTMLAsync(graph::toDOT).join().equals(GraphViz.renderDOTToHTMLAsync(dot).join());
+    } finally {
+        GraphViz.setRenderer(GraphRenderer.AUTO);
+    }
+}
+
 class GoodDotProduct extends RecursiveTask<Integer> {
     private final int[] a;
     private final int[] b;
@@ -387,6 +670,219 @@ class BadDotProduct extends RecursiveTask<Integer> {
     }
 }
 
+class LoopBetweenDotProduct extends RecursiveTask<Integer> {
+    private final int[] a;
+    private final int[] b;
+    private final int start;
+    private final int end;
+
+    public LoopBetweenDotProduct(int[] a, int[] b, int start, int end) {
+        this.a = a;
+        this.b = b;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    protected Integer __impl_compute() {
+        int mid = (start + end) / 2;
+        if (end - start <= 200_000) {
+            int sum = 0;
+            for (int i = start; i < end; i++) {
+                sum += a[i] * b[i];
+            }
+            return sum;
+        }
+        LoopBetweenDotProduct leftTask = new LoopBetweenDotProduct(a, b, start, mid);
+        leftTask.fork();
+        int rightResult = 0;
+        for (int i = mid; i < end; i++) {
+            rightResult += a[i] * b[i];
+        }
+        return leftTask.join() + rightResult;
+    }
+}
+
+class ComputeBothDotProduct extends RecursiveTask<Integer> {
+    private final int[] a;
+    private final int[] b;
+    private final int start;
+    private final int end;
+    private static final int THRESHOLD = 1000;
+
+    public ComputeBothDotProduct(int[] a, int[] b, int start, int end) {
+        this.a = a;
+        this.b = b;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    protected Integer __impl_compute() {
+        if (end - start <= THRESHOLD) {
+            int sum = 0;
+            for (int i = start; i < end; i++) {
+                sum += a[i] * b[i];
+            }
+            return sum;
+        } else {
+            int mid = (start + end) / 2;
+            ComputeBothDotProduct leftTask = new ComputeBothDotProduct(a, b, start, mid);
+            ComputeBothDotProduct rightTask = new ComputeBothDotProduct(a, b, mid, end);
+            int leftResult = leftTask.compute();
+            int rightResult = rightTask.compute();
+            return leftResult + rightResult;
+        }
+    }
+}
+
+class NestedInvokeDotProduct extends RecursiveTask<Integer> {
+    private final int[] a;
+    private final int[] b;
+    private final int start;
+    private final int end;
+    private static final int THRESHOLD = 1000;
+
+    public NestedInvokeDotProduct(int[] a, int[] b, int start, int end) {
+        this.a = a;
+        this.b = b;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    protected Integer __impl_compute() {
+        if (end - start <= THRESHOLD) {
+            int sum = 0;
+            for (int i = start; i < end; i++) {
+                sum += a[i] * b[i];
+            }
+            return sum;
+        } else {
+            int mid = (start + end) / 2;
+            NestedInvokeDotProduct leftTask = new NestedInvokeDotProduct(a, b, start, mid);
+            NestedInvokeDotProduct rightTask = new NestedInvokeDotProduct(a, b, mid, end);
+            int leftResult = ForkJoinPool.commonPool().invoke(leftTask);
+            int rightResult = ForkJoinPool.commonPool().invoke(rightTask);
+            return leftResult + rightResult;
+        }
+    }
+}
+
+class InvokeAllDotProduct extends RecursiveTask<Integer> {
+    private final int[] a;
+    private final int[] b;
+    private final int start;
+    private final int end;
+    private static final int THRESHOLD = 1000;
+
+    public InvokeAllDotProduct(int[] a, int[] b, int start, int end) {
+        this.a = a;
+        this.b = b;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    protected Integer __impl_compute() {
+        if (end - start <= THRESHOLD) {
+            int sum = 0;
+            for (int i = start; i < end; i++) {
+                sum += a[i] * b[i];
+            }
+            return sum;
+        } else {
+            int mid = (start + end) / 2;
+            InvokeAllDotProduct leftTask = new InvokeAllDotProduct(a, b, start, mid);
+            InvokeAllDotProduct rightTask = new InvokeAllDotProduct(a, b, mid, end);
+            invokeAll(rightTask, leftTask);
+            return leftTask.join() + rightTask.join();
+        }
+    }
+}
+
+class SubmitDotProduct extends RecursiveTask<Integer> {
+    private final int[] a;
+    private final int[] b;
+    private final int start;
+    private final int end;
+    private static final int THRESHOLD = 1000;
+
+    public SubmitDotProduct(int[] a, int[] b, int start, int end) {
+        this.a = a;
+        this.b = b;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    protected Integer __impl_compute() {
+        if (end - start <= THRESHOLD) {
+            int sum = 0;
+            for (int i = start; i < end; i++) {
+                sum += a[i] * b[i];
+            }
+            return sum;
+        } else {
+            int mid = (start + end) / 2;
+            SubmitDotProduct leftTask = new SubmitDotProduct(a, b, start, mid);
+            SubmitDotProduct rightTask = new SubmitDotProduct(a, b, mid, end);
+            ForkJoinPool.commonPool().submit(leftTask);
+            int rightResult = rightTask.invoke();
+            int leftResult = leftTask.join();
+            return leftResult + rightResult;
+        }
+    }
+}
+
+class CompleterDotProduct extends CountedCompleter<Integer> {
+    private final int[] a;
+    private final int[] b;
+    private final int start;
+    private final int end;
+    private static final int THRESHOLD = 1000;
+    private CompleterDotProduct leftTask;
+    private CompleterDotProduct rightTask;
+    private int sum;
+
+    public CompleterDotProduct(CountedCompleter<?> parent, int[] a, int[] b, int start, int end) {
+        super(parent);
+        this.a = a;
+        this.b = b;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    protected void __impl_compute() {
+        if (end - start <= THRESHOLD) {
+            for (int i = start; i < end; i++) {
+                sum += a[i] * b[i];
+            }
+            tryComplete();
+        } else {
+            int mid = (start + end) / 2;
+            leftTask = new CompleterDotProduct(this, a, b, start, mid);
+            rightTask = new CompleterDotProduct(this, a, b, mid, end);
+            setPendingCount(1);
+            leftTask.fork();
+            rightTask.compute();
+        }
+    }
+
+    @Override
+    public void onCompletion(CountedCompleter<?> caller) {
+        if (leftTask != null) {
+            sum = leftTask.sum + rightTask.sum;
+        }
+    }
+
+    @Override
+    public Integer getRawResult() {
+        return sum;
+    }
+}
+
 class DoubleForkDotProduct extends RecursiveTask<Integer> {
     private final int[] a;
     private final int[] b;
@@ -737,4 +1233,701 @@ class InvalidJoinNoForkDotProduct extends RecursiveTask<Integer> {
             return 5; // this doesn't matter
         }
     }
-}
\ No newline at end of file
+}
+
+void testEventBudget() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        b[i] = i;
+    }
+
+    var options = AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL);
+    var graphResult = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new BadDotProduct(a, b, 0, n)), options);
+    var overflowResult = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new BadDotProduct(a, b, 0, n)), options.withEventBudget(100));
+
+    // over budget: the graph is dropped, but work and span stay exact
+    assert overflowResult.graph() == null;
+    assert overflowResult.metrics().equals(graphResult.metrics());
+    assert overflowResult.metrics().estimated().isEmpty();
+
+    var goodResult = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)), options);
+    var tinyResult = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)), options.withStreaming(true).withEventBudget(1));
+
+    // too little to even connect forked tasks: work stays exact, span is an estimate
+    assert tinyResult.metrics().isExact(ForkJoinMetrics.Metric.STRUCTURAL_WORK);
+    assert tinyResult.metrics().structuralWork() == goodResult.metrics().structuralWork();
+    assert !tinyResult.metrics().isExact(ForkJoinMetrics.Metric.STRUCTURAL_CRITICAL_PATH);
+    assert tinyResult.metrics().structuralCriticalPath() <= goodResult.metrics().structuralCriticalPath();
+}
+
+void testParallelismMatchesStructure() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        b[i] = i;
+    }
+
+    var options = AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL);
+    int[] dotProducts = new int[2];
+    var inlineResult = ForkJoinAnalyzer.analyze(() -> dotProducts[0] = ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)), options);
+    var threadedResult = ForkJoinAnalyzer.analyze(() -> dotProducts[1] = ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)), options.withParallelism(4));
+
+    assert dotProducts[0] == dotProducts[1];
+    assert threadedResult.taskCount() == inlineResult.taskCount();
+    assert threadedResult.perTaskCount().equals(inlineResult.perTaskCount());
+    assert threadedResult.computeRatio() == inlineResult.computeRatio();
+    assert threadedResult.poolInvokes() == 1;
+    assert threadedResult.allForkedTasksJoined();
+    assert threadedResult.metrics().structuralWork() == inlineResult.metrics().structuralWork();
+    System.out.println("Threaded elapsed: " + threadedResult.elapsedNanos() + " ns");
+
+    // the budget caps all buffers together, not each of them
+    Runnable run = () -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n));
+    int low = 1, high = 1 << 20;
+    while (low < high) {
+        // without threads, the graph is kept while the events stay below the budget
+        int budget = (low + high) / 2;
+        if (ForkJoinAnalyzer.analyze(run, options.withEventBudget(budget)).graph() != null)
+            high = budget;
+        else
+            low = budget + 1;
+    }
+    int events = low - 1;
+    assert ForkJoinAnalyzer.analyze(run, options.withParallelism(4).withEventBudget(events)).metrics().estimated().isEmpty();
+    assert !ForkJoinAnalyzer.analyze(run, options.withParallelism(4).withEventBudget(events - 1)).metrics().estimated().isEmpty();
+}
+
+void testParallelismReportsMisuse() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        b[i] = i;
+    }
+
+    try {
+        ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new InvalidForkForkDotProduct(a, b, 0, n)),
+                AnalysisOptions.defaults().withParallelism(4));
+    } catch (BadParallelismException e) {
+        System.out.println("Caught expected BadParallelismException: " + e.getMessage());
+        return;
+    }
+    assert false : "Expected BadParallelismException was not thrown";
+}
+
+void testSchedulePrediction() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        b[i] = i;
+    }
+
+    var result = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)),
+            AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL));
+    double work = result.metrics().structuralWork();
+    double span = result.metrics().structuralCriticalPath();
+
+    var greedy = result.graph().predictStructuralSchedules(SchedulePrediction.Scheduler.GREEDY, 8);
+    assert greedy.size() == 8;
+    assert greedy.getFirst().time() == work;
+    for (var prediction : greedy) {
+        // Brent: max(T_1 / P, T_inf) <= T_P <= T_1 / P + T_inf
+        int p = prediction.processors();
+        assert prediction.time() >= Math.max(work / p, span);
+        assert prediction.time() <= work / p + span;
+    }
+
+    var stealing = result.graph().predictStructuralSchedules(SchedulePrediction.Scheduler.WORK_STEALING, 8);
+    assert stealing.getFirst().time() == work;
+    for (var prediction : stealing) {
+        // no processor idles while a deque has work, so Brent holds as well
+        int p = prediction.processors();
+        assert prediction.time() >= Math.max(work / p, span);
+        assert prediction.time() <= work / p + span;
+    }
+    System.out.println("Predicted work stealing speedup on 8 processors: " + stealing.getLast().speedup());
+    assert result.graph().speedupChartHTML(8).startsWith("<img");
+}
+
+void testSpanScaling() {
+    IntFunction<Runnable> good = n -> {
+        int[] a = new int[n];
+        int[] b = new int[n];
+        return () -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n));
+    };
+    IntFunction<Runnable> bad = n -> {
+        int[] a = new int[n];
+        int[] b = new int[n];
+        return () -> ForkJoinPool.commonPool().invoke(new BadDotProduct(a, b, 0, n));
+    };
+
+    var goodScaling = ForkJoinAnalyzer.analyzeScaling(good, 1 << 12, 1 << 18);
+    System.out.print(goodScaling.describe());
+    assert goodScaling.work() == Complexity.LINEAR;
+    assert goodScaling.span() == Complexity.LOGARITHMIC;
+    assert goodScaling.within(Complexity.LINEAR, Complexity.LOGARITHMIC);
+
+    var badScaling = ForkJoinAnalyzer.analyzeScaling(bad, 1 << 12, 1 << 18);
+    assert badScaling.span() == Complexity.LINEAR;
+    assert !badScaling.within(Complexity.LINEAR, Complexity.LOGARITHMIC);
+
+    // an empty range, or too few sizes to tell classes apart
+    for (int[] range : new int[][] { { 1 << 12, 1 << 11 }, { 1 << 12, 1 << 13 }, { 0, 1 << 12 } }) {
+        try {
+            ForkJoinAnalyzer.analyzeScaling(good, range[0], range[1]);
+            assert false;
+        } catch (IllegalArgumentException e) {
+            System.out.println("Caught expected IllegalArgumentException: " + e.getMessage());
+        }
+    }
+    assert ForkJoinAnalyzer.analyzeScaling(good, 1 << 12, 1 << 14).sizes().size() == 3;
+}
+
+void testTraceReplay() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        b[i] = i;
+    }
+
+    try {
+        var trace = Files.createTempFile("forkjoin", ".trace");
+        var options = AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL).withTrace(trace);
+        var recorded = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)), options);
+        var replayed = ForkJoinAnalyzer.replay(trace);
+
+        // the trace alone reproduces the run
+        assert replayed.graph().toDOT().equals(recorded.graph().toDOT());
+        assert replayed.metrics().equals(recorded.metrics());
+        assert replayed.taskCount() == recorded.taskCount();
+        assert replayed.perTaskCount().equals(recorded.perTaskCount());
+        assert replayed.perTaskComputeRatio().equals(recorded.perTaskComputeRatio());
+        assert replayed.computeRatio() == recorded.computeRatio();
+        assert replayed.elapsedNanos() == recorded.elapsedNanos();
+        assert ForkJoinAnalyzer.replay(trace, options.withStreaming(true)).metrics().equals(recorded.metrics());
+        System.out.println("Trace of " + recorded.taskCount() + " tasks: " + Files.size(trace) + " bytes");
+
+        // a run that failed leaves a trace that is rejected
+        try {
+            ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new InvalidForkForkDotProduct(a, b, 0, n)), options);
+            assert false : "Expected BadParallelismException was not thrown";
+        } catch (BadParallelismException e) {
+            // expected
+        }
+        try {
+            ForkJoinAnalyzer.replay(trace);
+            assert false : "Expected IOException for an incomplete trace";
+        } catch (IOException e) {
+            // expected
+        }
+        Files.delete(trace);
+    } catch (IOException e) {
+        throw new UncheckedIOException(e);
+    }
+}
+
+void testChromeTraceExport() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        b[i] = i;
+    }
+
+    try {
+        var trace = Files.createTempFile("forkjoin", ".trace");
+        var result = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)),
+                AnalysisOptions.defaults().withTrace(trace));
+        var json = new StringBuilder();
+        ForkJoinAnalyzer.exportChromeTrace(trace, json);
+        Files.delete(trace);
+
+        // one slice per task, and every arrow has both ends
+        assert json.toString().startsWith("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[");
+        assert json.toString().endsWith("]}\n");
+        assert json.toString().split("\"ph\":\"X\"", -1).length - 1 == result.taskCount();
+        assert json.toString().split("\"ph\":\"s\"", -1).length == json.toString().split("\"ph\":\"f\"", -1).length;
+    } catch (IOException e) {
+        throw new UncheckedIOException(e);
+    }
+}
+
+void testEventOverhead() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        b[i] = i;
+    }
+
+    // calibration is opt-in: by default, durations are measured raw
+    assert AnalysisOptions.defaults().eventOverhead() == 0;
+
+    long overhead = ForkJoinAnalyzer.calibrateEventOverhead(AnalysisOptions.defaults());
+    assert overhead >= 0;
+    System.out.println("Calibrated event overhead: " + overhead + " ns");
+
+    // more overhead than any segment lasts: nothing empirical is left, structure is untouched
+    var raw = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)),
+            AnalysisOptions.defaults().withEventOverhead(0));
+    var all = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)),
+            AnalysisOptions.defaults().withEventOverhead(Long.MAX_VALUE / 2));
+    assert raw.metrics().empiricalWork() > 0;
+    assert all.metrics().empiricalWork() == 0;
+    assert all.metrics().empiricalCriticalPath() <= 1; // never 0, so that speedups stay finite
+    assert all.metrics().structuralWork() == raw.metrics().structuralWork();
+    assert all.metrics().structuralCriticalPath() == raw.metrics().structuralCriticalPath();
+}
+
+void testRepeatedAnalysis() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        b[i] = i;
+    }
+
+    var d = new Distribution(List.of(5.0, 1.0, 4.0, 2.0, 3.0));
+    assert d.samples().equals(List.of(1.0, 2.0, 3.0, 4.0, 5.0));
+    assert d.median() == 3.0 && d.percentile(25) == 2.0 && d.percentile(90) == 4.6;
+    assert d.medianLower() <= d.median() && d.median() <= d.medianUpper();
+
+    // the logical clock does not vary, so the result is as stable as it gets
+    var logical = ForkJoinAnalyzer.analyzeRepeated(
+            () -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)), 1, 5,
+            AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL));
+    assert logical.metrics().size() == 5;
+    assert logical.empiricalSpeedup().relativeUncertainty() == 0;
+    assert logical.isStable();
+
+    var timed = ForkJoinAnalyzer.analyzeRepeated(
+            () -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)), 3, 15,
+            AnalysisOptions.defaults());
+    assert timed.metrics().size() == 15;
+    assert timed.elapsedNanos().min() > 0;
+    assert timed.empiricalSpeedup().medianLower() <= timed.empiricalSpeedup().medianUpper();
+    System.out.println(timed.describe());
+}
+
+void testAntiPatterns() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        b[i] = i;
+    }
+    var options = AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL);
+
+    var good = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)), options);
+    var doubleFork = ForkJoinAnalyzer.analyze(
+            () -> ForkJoinPool.commonPool().invoke(new DoubleForkDotProduct(a, b, 0, n)), options);
+    assert good.antiPatterns().isEmpty();
+    assert doubleFork.antiPatterns().isEmpty();
+
+    // every split point of the 15 in the tree does it once
+    var bad = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new BadDotProduct(a, b, 0, n)), options);
+    var forkThenJoin = bad.antiPatterns(AntiPattern.Kind.FORK_THEN_JOIN);
+    assert bad.antiPatterns().size() == 1;
+    assert forkThenJoin.getFirst().taskClass().equals("BadDotProduct");
+    assert forkThenJoin.getFirst().occurrences() == 15;
+    System.out.println(forkThenJoin.getFirst().describe());
+
+    var computeBoth = ForkJoinAnalyzer.analyze(
+            () -> ForkJoinPool.commonPool().invoke(new ComputeBothDotProduct(a, b, 0, n)), options);
+    var computeAll = computeBoth.antiPatterns(AntiPattern.Kind.COMPUTE_ALL);
+    assert computeBoth.antiPatterns().size() == 1;
+    assert computeAll.getFirst().occurrences() == 15;
+    // half of everything would come off the critical path at every level
+    assert computeAll.getFirst().spanCost() > 0;
+    assert computeAll.getFirst().spanCost() < computeBoth.metrics().empiricalCriticalPath();
+    System.out.println(computeAll.getFirst().describe());
+
+    var nested = ForkJoinAnalyzer.analyze(
+            () -> ForkJoinPool.commonPool().invoke(new NestedInvokeDotProduct(a, b, 0, n)), options);
+    assert nested.antiPatterns(AntiPattern.Kind.NESTED_INVOKE).getFirst().occurrences() == 30;
+    assert nested.antiPatterns(AntiPattern.Kind.COMPUTE_ALL).isEmpty();
+
+    // a parent summing its half between fork() and join() does real work there, unseen by events
+    int m = 400_000;
+    int[] c = new int[m];
+    java.util.Arrays.fill(c, 1);
+    for (int i = 0; i < 5; i++) {
+        var overlapped = ForkJoinAnalyzer.analyze(
+                () -> ForkJoinPool.commonPool().invoke(new LoopBetweenDotProduct(c, c, 0, m)),
+                AnalysisOptions.defaults());
+        assert overlapped.antiPatterns(AntiPattern.Kind.FORK_THEN_JOIN).isEmpty();
+    }
+
+    // over budget, nothing more is looked for, and the result says so
+    assert bad.antiPatternsComplete();
+    var saturated = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)),
+            options.withStreaming(true).withEventBudget(1));
+    assert !saturated.antiPatternsComplete();
+
+    // the same findings without a graph, on real threads, and from a trace
+    assert ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new BadDotProduct(a, b, 0, n)),
+            options.withStreaming(true)).antiPatterns().equals(bad.antiPatterns());
+    assert ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new BadDotProduct(a, b, 0, n)),
+            options.withParallelism(4)).antiPatterns(AntiPattern.Kind.FORK_THEN_JOIN).getFirst().occurrences() == 15;
+    try {
+        var trace = Files.createTempFile("forkjoin", ".trace");
+        var recorded = ForkJoinAnalyzer.analyze(
+                () -> ForkJoinPool.commonPool().invoke(new NestedInvokeDotProduct(a, b, 0, n)), options.withTrace(trace));
+        assert ForkJoinAnalyzer.replay(trace).antiPatterns().equals(recorded.antiPatterns());
+        Files.delete(trace);
+    } catch (IOException e) {
+        throw new UncheckedIOException(e);
+    }
+}
+
+void testGranularity() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        b[i] = i;
+    }
+    var options = AnalysisOptions.defaults().withSizeHint(t -> t instanceof GoodDotProduct g ? g.end - g.start : 0);
+
+    // 10000 splits into 16 leaves of 625, below the threshold of 1000
+    var logical = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)),
+            options.withClock(AnalysisOptions.Clock.LOGICAL));
+    var leaves = logical.granularity().get("GoodDotProduct");
+    assert leaves.leafCount() == 16;
+    assert leaves.cutoff() == 625;
+    assert leaves.leafSize().count() == 16;
+    assert leaves.leafSize().percentile(50) == 512; // 625 is in [512, 1024)
+    assert logical.granularity().get("GoodDotProduct").leafWork().count() == 16;
+
+    var threaded = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)),
+            options.withParallelism(4));
+    assert threaded.granularity().get("GoodDotProduct").cutoff() == 625;
+
+    // every leaf is below an unreachable threshold, none below 0
+    var all = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)),
+            options.withOverheadThreshold(Long.MAX_VALUE));
+    var none = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)),
+            options.withOverheadThreshold(0));
+    assert all.workBelowThreshold() > 0 && all.workBelowThreshold() <= 1;
+    assert none.workBelowThreshold() == 0;
+    System.out.println("Leaf work:\n" + all.granularity().get("GoodDotProduct").leafWork().describe("ns"));
+    System.out.printf("%.0f%% of work in leaves below the threshold%n", 100 * all.workBelowThreshold());
+
+    // without a size hint there is no cutoff
+    var unhinted = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)));
+    assert unhinted.granularity().get("GoodDotProduct").cutoff() == -1;
+    assert unhinted.granularity().get("GoodDotProduct").leafSize().count() == 0;
+}
+
+void testTaskApis() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    int expected = 0;
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        b[i] = i;
+        expected += i * i;
+    }
+    int dotProduct = expected;
+    var options = AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL);
+    var good = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)), options);
+
+    // each spelling of "fork one half, compute the other, join" gives the same graph
+    IntFunction<Runnable> runs = i -> switch (i) {
+        case 0 -> () -> { assert new GoodDotProduct(a, b, 0, n).invoke() == dotProduct; };
+        case 1 -> () -> { assert ForkJoinPool.commonPool().invoke(new InvokeAllDotProduct(a, b, 0, n)) == dotProduct; };
+        case 2 -> () -> { assert ForkJoinPool.commonPool().invoke(new SubmitDotProduct(a, b, 0, n)) == dotProduct; };
+        case 3 -> () -> { assert ForkJoinPool.commonPool().invoke(new CompleterDotProduct(null, a, b, 0, n)) == dotProduct; };
+        default -> () -> {
+            try {
+                assert ForkJoinPool.commonPool().submit(new GoodDotProduct(a, b, 0, n)).get() == dotProduct;
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        };
+    };
+    for (int i = 0; i < 5; i++) {
+        var result = ForkJoinAnalyzer.analyze(runs.apply(i), options);
+        assert result.poolInvokes() == 1;
+        assert result.allForkedTasksJoined();
+        assert result.antiPatterns().isEmpty();
+        assert result.metrics().structuralWork() == good.metrics().structuralWork();
+        assert result.metrics().structuralCriticalPath() == good.metrics().structuralCriticalPath();
+    }
+
+    // and the same results on real threads
+    for (int i = 0; i < 5; i++)
+        assert ForkJoinAnalyzer.analyze(runs.apply(i), options.withParallelism(4)).allForkedTasksJoined();
+
+    // nothing waits for an executed task, which runs all the same
+    var executed = new GoodDotProduct(a, b, 0, n);
+    ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().execute(executed), options);
+    assert executed.join() == dotProduct;
+}
+
+void testInstrumentationAgent() {
+    int n = 10_000;
+    int[] a = new int[n];
+    int[] b = new int[n];
+    int expected = 0;
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        b[i] = i;
+        expected += i * i;
+    }
+    int dotProduct = expected;
+
+    // load the unmodified class again, rewritten as the agent would
+    Class<?> rewritten = instrumented(JdkDotProduct.class);
+    assert RecursiveTask.class.isAssignableFrom(rewritten);
+
+    var options = AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL);
+    var good = ForkJoinAnalyzer.analyze(() -> ForkJoinPool.commonPool().invoke(new GoodDotProduct(a, b, 0, n)), options);
+    var result = ForkJoinAnalyzer.analyze(() -> {
+        try {
+            assert (int) rewritten.getMethod("dotProduct", int[].class, int[].class).invoke(null, a, b) == dotProduct;
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }, options);
+    assert result.poolInvokes() == 1;
+    assert result.allForkedTasksJoined();
+    assert result.metrics().structuralWork() == good.metrics().structuralWork();
+    assert result.metrics().structuralCriticalPath() == good.metrics().structuralCriticalPath();
+
+    // an array result is cast to its array type
+    Class<?> arrays = instrumented(JdkArrayDotProduct.class);
+    var arrayResult = ForkJoinAnalyzer.analyze(() -> {
+        try {
+            assert ((int[]) arrays.getMethod("dotProduct", int[].class, int[].class).invoke(null, a, b))[0] == dotProduct;
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }, options);
+    assert arrayResult.allForkedTasksJoined();
+    assert arrayResult.metrics().structuralWork() == good.metrics().structuralWork();
+    assert arrayResult.metrics().structuralCriticalPath() == good.metrics().structuralCriticalPath();
+    assert arrayResult.computeRatio() == result.computeRatio();
+
+    // the original class still runs on the JDK pool, and classes without fork-join are left alone
+    assert JdkDotProduct.dotProduct(a, b) == dotProduct;
+    try (InputStream in = classFile(GoodDotProduct.class)) {
+        assert InstrumentationAgent.instrument(in.readAllBytes()) == null;
+    } catch (IOException e) {
+        throw new UncheckedIOException(e);
+    }
+}
+
+Class<?> instrumented(Class<?> c) {
+    try (InputStream in = classFile(c)) {
+        byte[] classFile = InstrumentationAgent.instrument(in.readAllBytes());
+        assert classFile != null;
+        return new ClassLoader(c.getClassLoader()) {
+            Class<?> define() {
+                return defineClass(c.getName(), classFile, 0, classFile.length);
+            }
+        }.define();
+    } catch (IOException e) {
+        throw new UncheckedIOException(e);
+    }
+}
+
+InputStream classFile(Class<?> c) {
+    return c.getResourceAsStream(c.getName().substring(c.getName().lastIndexOf('.') + 1) + ".class");
+}
+
+/** Written against java.util.concurrent, as submitted. */
+public static class JdkDotProduct extends java.util.concurrent.RecursiveTask<Integer> {
+    private final int[] a;
+    private final int[] b;
+    private final int start;
+    private final int end;
+    private static final int THRESHOLD = 1000;
+
+    public JdkDotProduct(int[] a, int[] b, int start, int end) {
+        this.a = a;
+        this.b = b;
+        this.start = start;
+        this.end = end;
+    }
+
+    public static int dotProduct(int[] a, int[] b) {
+        return java.util.concurrent.ForkJoinPool.commonPool().invoke(new JdkDotProduct(a, b, 0, a.length));
+    }
+
+    @Override
+    protected Integer compute() {
+        if (end - start <= THRESHOLD) {
+            int sum = 0;
+            for (int i = start; i < end; i++) {
+                sum += a[i] * b[i];
+            }
+            return sum;
+        } else {
+            int mid = (start + end) / 2;
+            JdkDotProduct leftTask = new JdkDotProduct(a, b, start, mid);
+            JdkDotProduct rightTask = new JdkDotProduct(a, b, mid, end);
+            leftTask.fork();
+            int rightResult = rightTask.compute();
+            int leftResult = leftTask.join();
+            return leftResult + rightResult;
+        }
+    }
+}
+
+/** As {@link JdkDotProduct}, with an array result. */
+public static class JdkArrayDotProduct extends java.util.concurrent.RecursiveTask<int[]> {
+    private final int[] a;
+    private final int[] b;
+    private final int start;
+    private final int end;
+    private static final int THRESHOLD = 1000;
+
+    public JdkArrayDotProduct(int[] a, int[] b, int start, int end) {
+        this.a = a;
+        this.b = b;
+        this.start = start;
+        this.end = end;
+    }
+
+    public static int[] dotProduct(int[] a, int[] b) {
+        return java.util.concurrent.ForkJoinPool.commonPool().invoke(new JdkArrayDotProduct(a, b, 0, a.length));
+    }
+
+    @Override
+    protected int[] compute() {
+        if (end - start <= THRESHOLD) {
+            int sum = 0;
+            for (int i = start; i < end; i++) {
+                sum += a[i] * b[i];
+            }
+            return new int[] { sum };
+        } else {
+            int mid = (start + end) / 2;
+            JdkArrayDotProduct leftTask = new JdkArrayDotProduct(a, b, start, mid);
+            JdkArrayDotProduct rightTask = new JdkArrayDotProduct(a, b, mid, end);
+            leftTask.fork();
+            int[] rightResult = rightTask.compute();
+            int[] leftResult = leftTask.join();
+            return new int[] { leftResult[0] + rightResult[0] };
+        }
+    }
+}
+
+void testThreads() {
+    int n = 10_000;
+    int[] a = new int[n];
+    long expected = 0;
+    for (int i = 0; i < n; i++) {
+        a[i] = i;
+        expected += i;
+    }
+    long sum = expected;
+    var options = AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL);
+
+    // start every worker, then join every worker
+    IntFunction<Runnable> workers = joined -> () -> {
+        SumThread[] threads = new SumThread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new SumThread(a, i * n / 4, (i + 1) * n / 4);
+            threads[i].start();
+        }
+        long total = 0;
+        try {
+            for (int i = 0; i < joined; i++)
+                threads[i].join();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        for (SumThread thread : threads)
+            total += thread.sum;
+        assert joined < threads.length || total == sum;
+    };
+    var parallel = ForkJoinAnalyzer.analyze(workers.apply(4), options);
+    assert parallel.allForkedTasksJoined();
+    assert parallel.taskCount() == 5;
+    assert parallel.poolInvokes() == 0;
+    assert parallel.antiPatterns().isEmpty();
+    assert parallel.metrics().structuralSpeedup() > 1;
+    assert ForkJoinAnalyzer.analyze(workers.apply(4), options.withParallelism(4)).allForkedTasksJoined();
+
+    // a thread that is never joined still runs, and is reported
+    var unjoined = ForkJoinAnalyzer.analyze(workers.apply(3), options);
+    assert !unjoined.allForkedTasksJoined();
+    assert unjoined.taskCount() == 5;
+    // on worker threads too, where the analysis waits for it
+    for (int i = 0; i < 5; i++) {
+        var threaded = ForkJoinAnalyzer.analyze(workers.apply(3), options.withParallelism(4));
+        assert !threaded.allForkedTasksJoined();
+        assert threaded.metrics().structuralWork() == unjoined.metrics().structuralWork();
+    }
+
+    // joining each thread right after starting it runs them one at a time
+    var serial = ForkJoinAnalyzer.analyze(() -> {
+        long total = 0;
+        try {
+            for (int i = 0; i < 4; i++) {
+                var thread = new SumThread(a, i * n / 4, (i + 1) * n / 4);
+                thread.start();
+                thread.join();
+                total += thread.sum;
+            }
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        assert total == sum;
+    }, options);
+    assert serial.allForkedTasksJoined();
+    assert !serial.antiPatterns(AntiPattern.Kind.FORK_THEN_JOIN).isEmpty();
+    assert serial.antiPatterns(AntiPattern.Kind.FORK_THEN_JOIN).get(0).taskClass().equals("Main");
+
+    // a Runnable works as well
+    long[] total = new long[1];
+    var runnable = ForkJoinAnalyzer.analyze(() -> {
+        var thread = new Thread(() -> total[0] = sum);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }, options);
+    assert total[0] == sum;
+    assert runnable.allForkedTasksJoined();
+}
+
+class SumThread extends AnalyzedThread {
+    private final int[] a;
+    private final int start;
+    private final int end;
+    long sum;
+
+    public SumThread(int[] a, int start, int end) {
+        this.a = a;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public void run() {
+        for (int i = start; i < end; i++) {
+            sum += a[i];
+        }
+    }
+}
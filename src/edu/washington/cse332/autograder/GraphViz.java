@@ -1,63 +1,321 @@
 package edu.washington.cse332.autograder;
 
+import edu.washington.cse332.autograder.config.GraphRenderer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * <p>Utility class for rendering GraphViz DOT source code to images.</p>
- * 
+ *
+ * <p>Rendering happens on a small pool of daemon worker threads so that tests are
+ * not serialized behind image rendering. The asynchronous variants return a
+ * {@link CompletableFuture} that can be handed to {@link Output#set(CompletableFuture,
+ * edu.washington.cse332.autograder.config.TestOutputFormat)}; the
+ * {@link TestRunner} only waits for it when the result is emitted.</p>
+ *
+ * <p>By default the external GraphViz {@code dot} binary is used when it is
+ * installed, falling back to the in-process {@link LayeredSVGRenderer} otherwise.
+ * See {@link #setRenderer(GraphRenderer)}.</p>
+ *
+ * <p>Large graphs can be passed as a {@link DOTSource} instead of a String; the
+ * source is then written straight into the renderer and never held in memory
+ * as a whole.</p>
+ *
  * @author Albert Du
  */
 public class GraphViz {
+    private GraphViz() {
+        // prevent instantiation
+    }
+
+    /**
+     * Number of concurrent {@code dot} processes. Layout is CPU bound, so there is
+     * no point in having more workers than cores.
+     */
+    private static final int WORKER_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final ExecutorService workers = Executors.newFixedThreadPool(WORKER_COUNT, r -> {
+        var thread = new Thread(r, "graphviz-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile GraphRenderer renderer = GraphRenderer.AUTO;
+
+    /**
+     * <p>Writes DOT source code on demand, for example
+     * {@code graph::toDOT}.</p>
+     */
+    @FunctionalInterface
+    public interface DOTSource {
+        /**
+         * <p>Writes the whole DOT source to {@code out}. May be called more than
+         * once, if the first renderer turns out to be unavailable.</p>
+         * @param out where to write the source
+         * @throws IOException if writing to {@code out} fails
+         */
+        void writeTo(Appendable out) throws IOException;
+    }
+
+    /**
+     * Set once the {@code dot} binary turned out to be missing, so that {@link GraphRenderer#AUTO}
+     * stops paying for a failed process spawn on every graph.
+     */
+    private static volatile boolean dotMissing = false;
+
+    /**
+     * <p>Selects the engine used for all subsequent renders.</p>
+     * @param engine the rendering engine, {@link GraphRenderer#AUTO} by default
+     */
+    public static void setRenderer(GraphRenderer engine) {
+        renderer = engine;
+    }
 
     /**
      * <p>Renders the given DOT source code to an HTML tag with an image.</p>
+     * <p>Blocks until rendering has finished; prefer {@link #renderDOTToHTMLAsync(String)}.</p>
      * @param dotSource The DOT source code to render.
      * @return An HTML img tag containing the rendered image.
      */
     public static String renderDOTToHTML(String dotSource) {
-        String base64Image = renderDOTToBase64(dotSource);
-        return "<img src=\"" + base64Image + "\" />";
+        return renderDOTToHTML(out -> out.append(dotSource));
     }
 
     /**
-     * <p>Renders the given DOT source code to an SVG image in base64.</p>
-     * <p>Ready for use in an img tag.</p>
-     * @param dotSource The DOT source code representing the graph.
-     * @return A base64 webp representation of the graph as a String.
+     * <p>Renders the DOT source code written by {@code dotSource} to an HTML tag with an image.</p>
+     * <p>Blocks until rendering has finished; prefer {@link #renderDOTToHTMLAsync(DOTSource)}.</p>
+     * @param dotSource Writes the DOT source code to render.
+     * @return An HTML img tag containing the rendered image.
      */
-    private static String renderDOTToBase64(String dotSource) {
+    public static String renderDOTToHTML(DOTSource dotSource) {
         try {
-            var pb = new ProcessBuilder("dot", "-Twebp", "-Gsize=10,10\\!", "-Gdpi=100");
-            var process = pb.start();
+            return renderDOTToHTMLAsync(dotSource).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof AutograderException ae)
+                throw ae;
+            throw e;
+        }
+    }
+
+    /**
+     * <p>Renders the given DOT source code to an HTML tag with an image on a worker thread.</p>
+     * @param dotSource The DOT source code to render.
+     * @return A future of the HTML img tag containing the rendered image.
+     */
+    public static CompletableFuture<String> renderDOTToHTMLAsync(String dotSource) {
+        return renderDOTToHTMLAsync(out -> out.append(dotSource));
+    }
+
+    /**
+     * <p>Renders the DOT source code written by {@code dotSource} to an HTML tag with an image on a worker thread.</p>
+     * @param dotSource Writes the DOT source code to render; called on the worker thread.
+     * @return A future of the HTML img tag containing the rendered image.
+     */
+    public static CompletableFuture<String> renderDOTToHTMLAsync(DOTSource dotSource) {
+        CompletableFuture<String> image;
+        if (renderer == GraphRenderer.JAVA || (renderer == GraphRenderer.AUTO && dotMissing)) {
+            image = CompletableFuture.supplyAsync(() -> renderWithJava(dotSource), workers);
+        } else {
+            image = new CompletableFuture<>();
+            queue.add(new PendingGraph(dotSource, image));
+            workers.execute(GraphViz::renderQueued);
+        }
+        return image.thenApply(base64Image -> "<img src=\"" + base64Image + "\" />");
+    }
+
+    /**
+     * A graph waiting for a {@code dot} process.
+     */
+    private record PendingGraph(DOTSource source, CompletableFuture<String> image) {
+    }
 
-            // Write DOT source to the process's stdin
-            try (var outStream = process.getOutputStream()) {
-                outStream.write(dotSource.getBytes());
+    /**
+     * Graphs waiting to be rendered with {@code dot}. Every graph queued also queues a
+     * {@link #renderQueued()}, which takes whatever graphs are waiting by then.
+     */
+    private static final ConcurrentLinkedQueue<PendingGraph> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Most graphs laid out by one {@code dot} process.
+     */
+    private static final int BATCH_SIZE = 16;
+
+    /**
+     * <p>Renders up to {@link #BATCH_SIZE} queued graphs in a single {@code dot} process, so
+     * that graphs queued while the workers are busy share the cost of starting it.</p>
+     * <p>If the batch fails, each graph is rendered on its own, so that only the graphs at
+     * fault fail. With {@link GraphRenderer#AUTO}, a missing {@code dot} falls back to the
+     * in-process renderer.</p>
+     */
+    private static void renderQueued() {
+        var batch = new ArrayList<PendingGraph>();
+        for (PendingGraph graph; batch.size() < BATCH_SIZE && (graph = queue.poll()) != null; )
+            batch.add(graph);
+        if (batch.isEmpty())
+            return; // taken by another worker
+
+        try {
+            var images = renderWithDot(batch.stream().map(PendingGraph::source).toList());
+            for (int i = 0; i < batch.size(); i++)
+                batch.get(i).image().complete(images.get(i));
+            return;
+        } catch (DotNotFoundException e) {
+            if (renderer != GraphRenderer.AUTO) {
+                batch.forEach(graph -> graph.image().completeExceptionally(e));
+                return;
             }
+            dotMissing = true;
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).image().completeExceptionally(e);
+                return;
+            }
+        }
 
-            byte[] bytes;
-            
-            // Read webp output from the process's stdout
-            try (var inStream = process.getInputStream()) {
-                bytes = inStream.readAllBytes();
+        for (var graph : batch) {
+            try {
+                graph.image().complete(dotMissing
+                        ? renderWithJava(graph.source())
+                        : renderWithDot(List.of(graph.source())).get(0));
+            } catch (RuntimeException e) {
+                graph.image().completeExceptionally(e);
             }
-            
-            var base64 = Base64.getEncoder().encodeToString(bytes);
-            var webpOutput = "data:image/webp;base64," + base64;
+        }
+    }
+
+    /**
+     * <p>Renders the given DOT source code to an SVG image in base64 without spawning a process.</p>
+     * <p>The layout needs the whole graph before it can place anything, so the source is
+     * written out in full first.</p>
+     * @param dotSource Writes the DOT source code representing the graph.
+     * @return A base64 svg representation of the graph as a String.
+     */
+    private static String renderWithJava(DOTSource dotSource) {
+        var source = new StringWriter();
+        try {
+            dotSource.writeTo(source);
+        } catch (IOException e) {
+            throw new AutograderException(e);
+        }
+        String svg = LayeredSVGRenderer.render(source.toString());
+        return "data:image/svg+xml;base64," + Base64.getEncoder().encodeToString(svg.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * <p>Renders DOT source code to webp images in base64 with a single GraphViz process.</p>
+     * <p>{@code dot} lays out every graph in its input and writes the images one after the
+     * other; each webp image is a RIFF container that starts with its length, which
+     * separates them again.</p>
+     * @param dotSources Each writes the DOT source code representing one graph.
+     * @return A base64 webp representation of each graph, in order.
+     */
+    private static List<String> renderWithDot(List<DOTSource> dotSources) {
+        Process process;
+        try {
+            process = new ProcessBuilder("dot", "-Twebp", "-Gsize=10,10\\!", "-Gdpi=100").start();
+        } catch (IOException e) {
+            // start() reports a missing binary and, say, a permission problem alike
+            if (!dotOnPath())
+                throw new DotNotFoundException();
+            throw new AutograderException(e);
+        }
+
+        try {
+            // Read webp output from the process's stdout while the sources are written,
+            // as dot may fill the pipe before it has read all of them
+            var output = CompletableFuture.supplyAsync(() -> {
+                try (var inStream = process.getInputStream()) {
+                    return inStream.readAllBytes();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, Thread::startVirtualThread);
+
+            // Stream DOT sources into the process's stdin
+            try (var out = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8))) {
+                for (var dotSource : dotSources) {
+                    dotSource.writeTo(out);
+                    out.write('\n');
+                }
+            }
+
+            byte[] bytes = output.join();
 
             // Wait for the process to complete
             var exitCode = process.waitFor();
 
             if (exitCode == 127)
-                throw new AutograderException(
-                        "GraphViz 'dot' command not found. Please ensure GraphViz is installed and 'dot' is in your system PATH.");
+                throw new DotNotFoundException();
 
             if (exitCode != 0)
                 throw new AutograderException("GraphViz 'dot' command failed with exit code " + exitCode);
 
-            return webpOutput;
+            var images = new ArrayList<String>(dotSources.size());
+            int pos = 0;
+            while (pos + 8 <= bytes.length) {
+                // "RIFF", then the little-endian size of the rest, padded to even length
+                long size = (bytes[pos + 4] & 0xFFL) | (bytes[pos + 5] & 0xFFL) << 8
+                        | (bytes[pos + 6] & 0xFFL) << 16 | (bytes[pos + 7] & 0xFFL) << 24;
+                int end = (int) Math.min(bytes.length, pos + 8 + size + (size & 1));
+                images.add("data:image/webp;base64,"
+                        + Base64.getEncoder().encodeToString(Arrays.copyOfRange(bytes, pos, end)));
+                pos = end;
+            }
+            if (images.size() != dotSources.size())
+                throw new AutograderException("GraphViz 'dot' produced " + images.size() + " images for "
+                        + dotSources.size() + " graphs");
+
+            return images;
+        } catch (AutograderException e) {
+            throw e;
         } catch (Exception e) {
             throw new AutograderException(e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @return whether some directory on the PATH has a file named {@code dot},
+     *         so that {@link GraphRenderer#DOT} can render
+     */
+    public static boolean dotOnPath() {
+        var path = System.getenv("PATH");
+        if (path == null)
+            return false;
+        for (var dir : path.split(File.pathSeparator)) {
+            if (dir.isEmpty())
+                continue;
+            try {
+                if (Files.isRegularFile(Path.of(dir, "dot")) || Files.isRegularFile(Path.of(dir, "dot.exe")))
+                    return true;
+            } catch (InvalidPathException e) {
+                // not a directory this platform can look in
+            }
+        }
+        return false;
+    }
+
+    private static final class DotNotFoundException extends AutograderException {
+        private static final long serialVersionUID = 1L;
+
+        DotNotFoundException() {
+            super("GraphViz 'dot' command not found. Please ensure GraphViz is installed and 'dot' is in your system PATH.");
+        }
+    }
+}
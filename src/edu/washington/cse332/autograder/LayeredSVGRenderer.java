@@ -0,0 +1,673 @@
+package edu.washington.cse332.autograder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.*;
+
+/**
+ * <p>A small in-process replacement for {@code dot -Tsvg}.</p>
+ *
+ * <p>Understands the subset of DOT emitted by the autograder (node and edge
+ * statements with attribute lists, default {@code node}/{@code edge} attributes)
+ * and lays the graph out in layers, Sugiyama style:</p>
+ * <ol>
+ * <li>cycles are broken by reversing DFS back edges,</li>
+ * <li>nodes are assigned to layers by longest path from the sources,</li>
+ * <li>edges spanning several layers are split with dummy nodes,</li>
+ * <li>crossings are reduced with barycenter sweeps, and</li>
+ * <li>nodes are placed near the average position of their neighbors.</li>
+ * </ol>
+ *
+ * <p>All steps are linear in the size of the graph except for the per-layer sorts.</p>
+ */
+final class LayeredSVGRenderer {
+    private LayeredSVGRenderer() {
+        // prevent instantiation
+    }
+
+    private static final int NODE_HEIGHT = 36;
+    private static final int MIN_NODE_WIDTH = 54;
+    private static final int CHAR_WIDTH = 7;
+    private static final int NODE_GAP = 18;
+    /** Space between the tallest nodes of neighboring layers. */
+    private static final int LAYER_GAP = 36;
+    private static final int MARGIN = 8;
+    private static final int ORDERING_SWEEPS = 4;
+    private static final int PLACEMENT_SWEEPS = 4;
+
+    /**
+     * Renders DOT source to an SVG document.
+     *
+     * @param dotSource the DOT source code
+     * @return the SVG document
+     */
+    static String render(String dotSource) {
+        try {
+            return render(new StringReader(dotSource));
+        } catch (IOException e) {
+            throw new AssertionError(e); // a StringReader does not fail
+        }
+    }
+
+    /**
+     * Renders DOT source to an SVG document, parsing it as it is read.
+     *
+     * @param dotSource the DOT source code
+     * @return the SVG document
+     * @throws IOException if reading the source fails
+     */
+    static String render(Reader dotSource) throws IOException {
+        var graph = Parser.parse(dotSource);
+        return new Layout(graph).toSVG();
+    }
+
+    // #region Graph model
+    private static final class Node {
+        final String id;
+        final Map<String, String> attrs;
+        int index;
+
+        Node(String id, Map<String, String> attrs, int index) {
+            this.id = id;
+            this.attrs = attrs;
+            this.index = index;
+        }
+
+        String label() {
+            return attrs.getOrDefault("label", id);
+        }
+    }
+
+    private record Edge(int from, int to, Map<String, String> attrs) {
+    }
+
+    private static final class Graph {
+        final List<Node> nodes = new ArrayList<>();
+        final Map<String, Node> byId = new HashMap<>();
+        final List<Edge> edges = new ArrayList<>();
+        final Map<String, String> nodeDefaults = new HashMap<>();
+        final Map<String, String> edgeDefaults = new HashMap<>();
+
+        Node node(String id) {
+            var node = byId.get(id);
+            if (node == null) {
+                node = new Node(id, new HashMap<>(nodeDefaults), nodes.size());
+                nodes.add(node);
+                byId.put(id, node);
+            }
+            return node;
+        }
+    }
+    // #endregion
+
+    // #region Parser
+    private static final class Parser {
+        private static final int NONE = -2;
+
+        private final Reader src;
+        /** one character of lookahead, {@link #NONE} if there is none */
+        private int pushedBack = NONE;
+        /** one token of lookahead */
+        private String peeked;
+        private boolean hasPeeked;
+
+        private Parser(Reader src) {
+            this.src = src;
+        }
+
+        static Graph parse(Reader src) throws IOException {
+            var parser = new Parser(src);
+            var graph = new Graph();
+            parser.parseGraph(graph);
+            return graph;
+        }
+
+        private void parseGraph(Graph graph) throws IOException {
+            // header: [strict] (digraph | graph) [ID] {
+            String tok;
+            while ((tok = next()) != null && !tok.equals("{"))
+                ;
+
+            while ((tok = next()) != null) {
+                switch (tok) {
+                    case "}", ";", "{" -> {
+                        // block structure (subgraphs) is flattened
+                    }
+                    case "node" -> graph.nodeDefaults.putAll(attributesIfPresent());
+                    case "edge" -> graph.edgeDefaults.putAll(attributesIfPresent());
+                    case "graph", "subgraph" -> attributesIfPresent();
+                    default -> statement(graph, tok);
+                }
+            }
+        }
+
+        private void statement(Graph graph, String first) throws IOException {
+            if ("=".equals(peek())) {
+                // graph attribute: ID = ID
+                next();
+                next();
+                return;
+            }
+
+            var chain = new ArrayList<String>();
+            chain.add(first);
+            while ("->".equals(peek()) || "--".equals(peek())) {
+                next();
+                chain.add(next());
+            }
+            var attrs = attributesIfPresent();
+
+            if (chain.size() == 1) {
+                graph.node(first).attrs.putAll(attrs);
+                return;
+            }
+
+            for (int i = 0; i + 1 < chain.size(); i++) {
+                var merged = new HashMap<>(graph.edgeDefaults);
+                merged.putAll(attrs);
+                var from = graph.node(chain.get(i));
+                var to = graph.node(chain.get(i + 1));
+                graph.edges.add(new Edge(from.index, to.index, merged));
+            }
+        }
+
+        private Map<String, String> attributesIfPresent() throws IOException {
+            var attrs = new HashMap<String, String>();
+            while ("[".equals(peek())) {
+                next();
+                String tok;
+                while ((tok = next()) != null && !tok.equals("]")) {
+                    if (tok.equals(",") || tok.equals(";"))
+                        continue;
+                    if ("=".equals(peek())) {
+                        next();
+                        attrs.put(tok, next());
+                    } else
+                        attrs.put(tok, "true");
+                }
+            }
+            return attrs;
+        }
+
+        private String peek() throws IOException {
+            if (!hasPeeked) {
+                peeked = readToken();
+                hasPeeked = true;
+            }
+            return peeked;
+        }
+
+        private String next() throws IOException {
+            if (hasPeeked) {
+                hasPeeked = false;
+                return peeked;
+            }
+            return readToken();
+        }
+
+        private String readToken() throws IOException {
+            int c = skipWhitespaceAndComments();
+            if (c < 0)
+                return null;
+
+            if (c == '"') {
+                var sb = new StringBuilder();
+                while ((c = read()) >= 0 && c != '"') {
+                    if (c == '\\') {
+                        int escaped = read();
+                        if (escaped < 0)
+                            break;
+                        sb.append(escaped == 'n' ? '\n' : (char) escaped);
+                    } else
+                        sb.append((char) c);
+                }
+                return sb.toString();
+            }
+            if (c == '-') {
+                int following = read();
+                if (following == '>' || following == '-')
+                    return "-" + (char) following;
+                unread(following);
+            }
+            if ("{}[]=;,".indexOf(c) >= 0 || !isIdChar((char) c))
+                return String.valueOf((char) c); // single punctuation, known or not
+
+            var sb = new StringBuilder();
+            sb.append((char) c);
+            while ((c = read()) >= 0 && isIdChar((char) c))
+                sb.append((char) c);
+            unread(c);
+            return sb.toString();
+        }
+
+        private static boolean isIdChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+        }
+
+        /**
+         * @return the first character that is not whitespace or part of a comment, or -1 at the end
+         */
+        private int skipWhitespaceAndComments() throws IOException {
+            while (true) {
+                int c = read();
+                if (c < 0 || !(Character.isWhitespace(c) || c == '#' || c == '/'))
+                    return c;
+                if (c == '/') {
+                    int following = read();
+                    if (following == '/')
+                        skipLine();
+                    else if (following == '*')
+                        skipBlockComment();
+                    else {
+                        unread(following);
+                        return c;
+                    }
+                } else if (c == '#')
+                    skipLine();
+            }
+        }
+
+        private void skipLine() throws IOException {
+            int c;
+            while ((c = read()) >= 0 && c != '\n')
+                ;
+        }
+
+        private void skipBlockComment() throws IOException {
+            int previous = -1, c;
+            while ((c = read()) >= 0 && !(previous == '*' && c == '/'))
+                previous = c;
+        }
+
+        private int read() throws IOException {
+            if (pushedBack != NONE) {
+                int c = pushedBack;
+                pushedBack = NONE;
+                return c;
+            }
+            return src.read();
+        }
+
+        private void unread(int c) {
+            pushedBack = c;
+        }
+    }
+    // #endregion
+
+    // #region Layout
+    private static final class Layout {
+        private final Graph graph;
+        /** Real nodes first, dummies after. */
+        private int vertexCount;
+        private int[] layer;
+        private double[] x;
+        private int[] width;
+        /** Adjacency over the layered (acyclic, unit-span) graph. */
+        private int[][] down;
+        private int[][] up;
+        private List<List<Integer>> layers;
+        /** Vertical center of every layer. */
+        private double[] layerY;
+        /** For every original edge, the chain of vertices it is drawn through. */
+        private final List<int[]> routes = new ArrayList<>();
+
+        Layout(Graph graph) {
+            this.graph = graph;
+            assignLayers();
+            splitLongEdges();
+            orderLayers();
+            placeNodes();
+            placeLayers();
+        }
+
+        private void assignLayers() {
+            int n = graph.nodes.size();
+            var out = new ArrayList<List<Integer>>(n);
+            for (int i = 0; i < n; i++)
+                out.add(new ArrayList<>());
+            for (int e = 0; e < graph.edges.size(); e++)
+                out.get(graph.edges.get(e).from()).add(e);
+
+            // Iterative DFS marks back edges, which are reversed for layering only.
+            var reversed = new boolean[graph.edges.size()];
+            var state = new byte[n]; // 0 = new, 1 = on stack, 2 = done
+            var stack = new int[n];
+            var cursor = new int[n];
+            for (int s = 0; s < n; s++) {
+                if (state[s] != 0)
+                    continue;
+                int sp = 0;
+                stack[sp++] = s;
+                state[s] = 1;
+                while (sp > 0) {
+                    int u = stack[sp - 1];
+                    if (cursor[u] < out.get(u).size()) {
+                        int e = out.get(u).get(cursor[u]++);
+                        int v = graph.edges.get(e).to();
+                        if (state[v] == 1)
+                            reversed[e] = true;
+                        else if (state[v] == 0) {
+                            state[v] = 1;
+                            stack[sp++] = v;
+                        }
+                    } else {
+                        state[u] = 2;
+                        sp--;
+                    }
+                }
+            }
+
+            // Longest path layering via Kahn's algorithm.
+            var indegree = new int[n];
+            var succ = new ArrayList<List<Integer>>(n);
+            for (int i = 0; i < n; i++)
+                succ.add(new ArrayList<>());
+            for (int e = 0; e < graph.edges.size(); e++) {
+                var edge = graph.edges.get(e);
+                if (edge.from() == edge.to())
+                    continue;
+                int from = reversed[e] ? edge.to() : edge.from();
+                int to = reversed[e] ? edge.from() : edge.to();
+                succ.get(from).add(to);
+                indegree[to]++;
+            }
+            layer = new int[n];
+            var queue = new ArrayDeque<Integer>();
+            for (int i = 0; i < n; i++)
+                if (indegree[i] == 0)
+                    queue.add(i);
+            while (!queue.isEmpty()) {
+                int u = queue.poll();
+                for (int v : succ.get(u)) {
+                    layer[v] = Math.max(layer[v], layer[u] + 1);
+                    if (--indegree[v] == 0)
+                        queue.add(v);
+                }
+            }
+        }
+
+        private void splitLongEdges() {
+            int n = graph.nodes.size();
+            var layers = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++)
+                layers.add(layer[i]);
+            var layeredEdges = new ArrayList<int[]>();
+
+            int next = n;
+            for (var edge : graph.edges) {
+                int from = edge.from(), to = edge.to();
+                if (from == to) {
+                    routes.add(new int[] { from });
+                    continue;
+                }
+                boolean flipped = layer[from] > layer[to];
+                int top = flipped ? to : from, bottom = flipped ? from : to;
+                int span = layer[bottom] - layer[top];
+                var route = new int[Math.max(span, 1) + 1];
+                route[0] = top;
+                int prev = top;
+                for (int k = 1; k < span; k++) {
+                    layers.add(layer[top] + k);
+                    layeredEdges.add(new int[] { prev, next });
+                    route[k] = next;
+                    prev = next++;
+                }
+                if (span == 0) {
+                    // Same layer (only possible for reversed 2-cycles); draw directly.
+                    route[1] = bottom;
+                } else {
+                    layeredEdges.add(new int[] { prev, bottom });
+                    route[span] = bottom;
+                }
+                if (flipped) {
+                    for (int i = 0, j = route.length - 1; i < j; i++, j--) {
+                        int tmp = route[i];
+                        route[i] = route[j];
+                        route[j] = tmp;
+                    }
+                }
+                routes.add(route);
+            }
+
+            vertexCount = next;
+            layer = layers.stream().mapToInt(Integer::intValue).toArray();
+            width = new int[vertexCount];
+            for (int i = 0; i < vertexCount; i++)
+                width[i] = i < n ? nodeWidth(graph.nodes.get(i)) : 0;
+
+            var downCount = new int[vertexCount];
+            var upCount = new int[vertexCount];
+            for (var e : layeredEdges) {
+                downCount[e[0]]++;
+                upCount[e[1]]++;
+            }
+            down = new int[vertexCount][];
+            up = new int[vertexCount][];
+            for (int i = 0; i < vertexCount; i++) {
+                down[i] = new int[downCount[i]];
+                up[i] = new int[upCount[i]];
+            }
+            for (var e : layeredEdges) {
+                down[e[0]][--downCount[e[0]]] = e[1];
+                up[e[1]][--upCount[e[1]]] = e[0];
+            }
+        }
+
+        private void orderLayers() {
+            int maxLayer = 0;
+            for (int l : layer)
+                maxLayer = Math.max(maxLayer, l);
+            layers = new ArrayList<>();
+            for (int i = 0; i <= maxLayer; i++)
+                layers.add(new ArrayList<>());
+            for (int v = 0; v < vertexCount; v++)
+                layers.get(layer[v]).add(v);
+
+            var position = new double[vertexCount];
+            var key = new double[vertexCount];
+            for (var row : layers)
+                for (int i = 0; i < row.size(); i++)
+                    position[row.get(i)] = i;
+            for (int sweep = 0; sweep < ORDERING_SWEEPS; sweep++) {
+                for (int l = 1; l < layers.size(); l++)
+                    sortByBarycenter(layers.get(l), up, position, key);
+                for (int l = layers.size() - 2; l >= 0; l--)
+                    sortByBarycenter(layers.get(l), down, position, key);
+            }
+        }
+
+        private void sortByBarycenter(List<Integer> row, int[][] neighbors, double[] position, double[] key) {
+            for (int v : row) {
+                var adj = neighbors[v];
+                if (adj.length == 0) {
+                    key[v] = position[v];
+                    continue;
+                }
+                double sum = 0;
+                for (int u : adj)
+                    sum += position[u];
+                key[v] = sum / adj.length;
+            }
+            row.sort(Comparator.comparingDouble(v -> key[v]));
+            for (int i = 0; i < row.size(); i++)
+                position[row.get(i)] = i;
+        }
+
+        private void placeNodes() {
+            x = new double[vertexCount];
+            for (var row : layers)
+                packLeftToRight(row, null);
+
+            for (int sweep = 0; sweep < PLACEMENT_SWEEPS; sweep++) {
+                var wanted = new double[vertexCount];
+                for (int l = 1; l < layers.size(); l++) {
+                    for (int v : layers.get(l))
+                        wanted[v] = average(up[v], x[v]);
+                    packLeftToRight(layers.get(l), wanted);
+                }
+                for (int l = layers.size() - 2; l >= 0; l--) {
+                    for (int v : layers.get(l))
+                        wanted[v] = average(down[v], x[v]);
+                    packLeftToRight(layers.get(l), wanted);
+                }
+            }
+
+            double minX = Double.MAX_VALUE;
+            for (int v = 0; v < vertexCount; v++)
+                minX = Math.min(minX, x[v] - width[v] / 2.0);
+            for (int v = 0; v < vertexCount; v++)
+                x[v] += MARGIN - minX;
+        }
+
+        private double average(int[] neighbors, double fallback) {
+            if (neighbors.length == 0)
+                return fallback;
+            double sum = 0;
+            for (int u : neighbors)
+                sum += x[u];
+            return sum / neighbors.length;
+        }
+
+        /**
+         * Places a layer's vertices in order at their wanted centers (or as tightly
+         * as possible), pushing right whenever they would overlap, then recenters
+         * the row on its wanted positions.
+         */
+        private void packLeftToRight(List<Integer> row, double[] wanted) {
+            // leftmost center the next vertex may take is right + its half width
+            double right = wanted == null ? 0 : Double.NEGATIVE_INFINITY;
+            double drift = 0;
+            for (int v : row) {
+                double half = width[v] / 2.0;
+                double target = wanted == null ? right + half : wanted[v];
+                double center = Math.max(target, right + half);
+                x[v] = center;
+                drift += target - center;
+                right = center + half + NODE_GAP;
+            }
+            if (wanted != null && !row.isEmpty()) {
+                // pushing right only accumulates drift; recenter on the targets
+                drift /= row.size();
+                for (int v : row)
+                    x[v] += drift;
+            }
+        }
+
+        /**
+         * Spaces the layers by their tallest node, as multi-line labels make
+         * nodes taller; a layer of dummies only is as tall as a one-line node.
+         */
+        private void placeLayers() {
+            layerY = new double[layers.size() + 1];
+            double top = MARGIN;
+            for (int l = 0; l < layers.size(); l++) {
+                int tallest = NODE_HEIGHT;
+                for (int v : layers.get(l))
+                    if (v < graph.nodes.size())
+                        tallest = Math.max(tallest, nodeHeight(graph.nodes.get(v)));
+                layerY[l] = top + tallest / 2.0;
+                top += tallest + LAYER_GAP;
+            }
+            // the bottom of the last layer
+            layerY[layers.size()] = top - LAYER_GAP;
+        }
+
+        private static int nodeWidth(Node node) {
+            int longest = 0;
+            for (var line : node.label().split("\n"))
+                longest = Math.max(longest, line.length());
+            return Math.max(MIN_NODE_WIDTH, longest * CHAR_WIDTH + 20);
+        }
+
+        private int nodeHeight(Node node) {
+            return NODE_HEIGHT + 14 * (node.label().split("\n").length - 1);
+        }
+
+        private double y(int v) {
+            return layerY[layer[v]];
+        }
+
+        String toSVG() {
+            double maxX = 0;
+            for (int v = 0; v < vertexCount; v++)
+                maxX = Math.max(maxX, x[v] + width[v] / 2.0);
+            int w = (int) Math.ceil(maxX) + MARGIN;
+            int h = (int) Math.ceil(layerY[layers.size()]) + MARGIN + 28;
+
+            var sb = new StringBuilder();
+            sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(w).append("\" height=\"")
+                    .append(h).append("\" viewBox=\"0 0 ").append(w).append(' ').append(h)
+                    .append("\" font-family=\"Times,serif\" font-size=\"14\">");
+
+            // one arrowhead per color; numbered, as a color such as #ff0000 is no valid id
+            var markers = new LinkedHashMap<String, Integer>();
+            for (var edge : graph.edges)
+                markers.putIfAbsent(edge.attrs().getOrDefault("color", "black"), markers.size());
+            sb.append("<defs>");
+            for (var marker : markers.entrySet())
+                sb.append("<marker id=\"a-").append(marker.getValue())
+                        .append("\" markerWidth=\"10\" markerHeight=\"7\" refX=\"10\" refY=\"3.5\" orient=\"auto\">")
+                        .append("<polygon points=\"0 0,10 3.5,0 7\" fill=\"").append(escape(marker.getKey()))
+                        .append("\"/></marker>");
+            sb.append("</defs>");
+
+            for (int e = 0; e < graph.edges.size(); e++)
+                appendEdge(sb, graph.edges.get(e), routes.get(e), markers);
+            for (var node : graph.nodes)
+                appendNode(sb, node);
+
+            sb.append("</svg>");
+            return sb.toString();
+        }
+
+        private void appendEdge(StringBuilder sb, Edge edge, int[] route, Map<String, Integer> markers) {
+            if (route.length < 2)
+                return; // self loops are not drawn
+            var rawColor = edge.attrs().getOrDefault("color", "black");
+            var color = escape(rawColor);
+            sb.append("<polyline fill=\"none\" stroke=\"").append(color).append("\" points=\"");
+            for (int i = 0; i < route.length; i++) {
+                int v = route[i];
+                double py = y(v);
+                if (i == 0 && v < graph.nodes.size())
+                    py += (layer[route[1]] >= layer[v] ? 1 : -1) * nodeHeight(graph.nodes.get(v)) / 2.0;
+                else if (i == route.length - 1 && v < graph.nodes.size())
+                    py -= (layer[v] >= layer[route[i - 1]] ? 1 : -1) * nodeHeight(graph.nodes.get(v)) / 2.0;
+                if (i > 0)
+                    sb.append(' ');
+                sb.append(Math.round(x[v])).append(',').append(Math.round(py));
+            }
+            sb.append("\" marker-end=\"url(#a-").append(markers.get(rawColor)).append(")\"/>");
+        }
+
+        private void appendNode(StringBuilder sb, Node node) {
+            int v = node.index;
+            var stroke = escape(node.attrs.getOrDefault("color", "black"));
+            var fontColor = escape(node.attrs.getOrDefault("fontcolor", "black"));
+            var fill = escape(node.attrs.getOrDefault("fillcolor", "white"));
+            var lines = node.label().split("\n");
+            int height = nodeHeight(node);
+            long cx = Math.round(x[v]), cy = Math.round(y(v));
+
+            if ("box".equals(node.attrs.get("shape")) || "record".equals(node.attrs.get("shape")))
+                sb.append("<rect x=\"").append(cx - width[v] / 2).append("\" y=\"").append(cy - height / 2)
+                        .append("\" width=\"").append(width[v]).append("\" height=\"").append(height);
+            else
+                sb.append("<ellipse cx=\"").append(cx).append("\" cy=\"").append(cy).append("\" rx=\"")
+                        .append(width[v] / 2).append("\" ry=\"").append(height / 2);
+            sb.append("\" fill=\"").append(fill).append("\" stroke=\"").append(stroke).append("\"/>");
+
+            long firstLine = cy + 5 - 7L * (lines.length - 1);
+            for (int i = 0; i < lines.length; i++)
+                sb.append("<text x=\"").append(cx).append("\" y=\"").append(firstLine + 14L * i)
+                        .append("\" text-anchor=\"middle\" fill=\"").append(fontColor).append("\">")
+                        .append(escape(lines[i])).append("</text>");
+        }
+
+        private static String escape(String s) {
+            return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+        }
+    }
+    // #endregion
+}
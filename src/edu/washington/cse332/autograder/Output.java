@@ -2,9 +2,14 @@ package edu.washington.cse332.autograder;
 
 import edu.washington.cse332.autograder.config.TestOutputFormat;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * <p>A thread-local output holder for test result outputs.</p>
- * 
+ *
+ * <p>Outputs may be still pending (e.g. a graph that is being rendered by
+ * {@link GraphViz}); they are resolved when the test results are emitted.</p>
+ *
  * @author Albert Du
  */
 public class Output {
@@ -12,14 +17,27 @@ public class Output {
         // prevent instantiation
     }
 
+    private static final CompletableFuture<String> PASSED = CompletableFuture.completedFuture("Passed");
+
     private static ThreadLocal<TestOutputFormat> format = ThreadLocal.withInitial(() -> TestOutputFormat.TEXT);
-    private static ThreadLocal<String> output = ThreadLocal.withInitial(() -> "Passed");
+    private static ThreadLocal<CompletableFuture<String>> output = ThreadLocal.withInitial(() -> PASSED);
 
-    public static void set(String out, TestOutputFormat fmt) {
+    /**
+     * <p>Sets an output that may still be computing, such as
+     * {@link GraphViz#renderDOTToHTMLAsync(String)}.</p>
+     *
+     * @param out the pending output
+     * @param fmt the output format
+     */
+    public static void set(CompletableFuture<String> out, TestOutputFormat fmt) {
         format.set(fmt);
         output.set(out);
     }
 
+    public static void set(String out, TestOutputFormat fmt) {
+        set(CompletableFuture.completedFuture(out), fmt);
+    }
+
     public static void set(String out) {
         set(out, TestOutputFormat.TEXT);
     }
@@ -29,14 +47,14 @@ public class Output {
      */
     static void reset() {
         format.set(TestOutputFormat.TEXT);
-        output.set("Passed");
+        output.set(PASSED);
     }
 
     static TestOutputFormat getFormat() {
         return format.get();
     }
 
-    static String getOutput() {
+    static CompletableFuture<String> getOutput() {
         return output.get();
     }
 }
@@ -6,6 +6,8 @@ import edu.washington.cse332.autograder.config.Visibility;
 import java.io.*;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * <p>
@@ -55,7 +57,7 @@ public class TestRunner {
      * @param suiteClass the class to run, must be annotated with {@link TestSuite}
      * @throws Exception if any error occurs during test execution
      */
-    private static void runSuite(Class<?> suiteClass) throws Exception {
+    public static void runSuite(Class<?> suiteClass) throws Exception {
         TestSuite suiteAnn = suiteClass.getAnnotation(TestSuite.class);
         if (suiteAnn == null)
             return;
@@ -74,8 +76,10 @@ public class TestRunner {
         boolean allPassed = true;
         int totalPossible = 0;
         boolean isSanityCheck = suiteAnn.sanityCheck();
-        List<String> jsonEntries = new ArrayList<>();
-        List<String> persistentJsonEntries = new ArrayList<>();
+        // Outputs may still be rendering; they are only resolved once the results are emitted.
+        List<CompletableFuture<String>> jsonEntries = new ArrayList<>();
+        List<CompletableFuture<String>> persistentJsonEntries = new ArrayList<>();
+        List<CompletableFuture<String>> pendingOutputs = new ArrayList<>();
 
         // Instantiate your test class
         Object instance = suiteClass.getDeclaredConstructor().newInstance();
@@ -98,12 +102,13 @@ public class TestRunner {
             try {
                 m.setAccessible(true);
                 m.invoke(instance);
-                // passed
-                jsonEntries.add(makeJson(points, points, suiteName + " - " + testName,
+                // passed, unless its output fails to render
+                pendingOutputs.add(Output.getOutput());
+                jsonEntries.add(makeJsonAsync(points, points, suiteName + " - " + testName,
                         Output.getOutput(), Output.getFormat(), vis, isSanityCheck));
 
                 if (persistOutput) {
-                    persistentJsonEntries.add(makeJson(0, 0, suiteName + " - " + testName,
+                    persistentJsonEntries.add(makeJsonAsync(0, 0, suiteName + " - " + testName,
                             Output.getOutput(), Output.getFormat(), vis, isSanityCheck));
                 }
             } catch (InvocationTargetException ite) {
@@ -111,12 +116,14 @@ public class TestRunner {
 
                 if (ex instanceof RightResultException rre) {
                     // special case: right result but with extra output
-                    jsonEntries.add(makeJson(points, points, suiteName + " - " + testName,
-                            rre.getMessage(), rre.getOutputFormat(), vis, isSanityCheck));
+                    jsonEntries.add(CompletableFuture.completedFuture(makeJson(points, points,
+                            suiteName + " - " + testName, rre.getMessage(), rre.getOutputFormat(), vis,
+                            isSanityCheck)));
 
                     if (persistOutput) {
-                        persistentJsonEntries.add(makeJson(0, 0, suiteName + " - " + testName,
-                                rre.getMessage(), rre.getOutputFormat(), vis, isSanityCheck));
+                        persistentJsonEntries.add(CompletableFuture.completedFuture(makeJson(0, 0,
+                                suiteName + " - " + testName, rre.getMessage(), rre.getOutputFormat(), vis,
+                                isSanityCheck)));
                     }
                     continue;
                 }
@@ -134,11 +141,17 @@ public class TestRunner {
                     msg = ex.getClass().getName() + ": " + ex.getMessage();
                     format = TestOutputFormat.TEXT;
                 }
-                jsonEntries.add(makeJson(0, points, suiteName + " - " + testName,
-                        msg, format, vis, isSanityCheck));
+                jsonEntries.add(CompletableFuture.completedFuture(makeJson(0, points,
+                        suiteName + " - " + testName, msg, format, vis, isSanityCheck)));
             }
         }
 
+        // A test whose output failed to be produced has failed as well
+        for (var output : pendingOutputs) {
+            if (output.handle((out, ex) -> ex != null).join())
+                allPassed = false;
+        }
+
         // Restore System.out, print summary to console
         System.setOut(origOut);
 
@@ -150,18 +163,44 @@ public class TestRunner {
                     "Passed!", TestOutputFormat.TEXT, suiteVis, suiteAnn.sanityCheck()));
 
             // print the persistent entries right away, they have 0 score so they don't affect the total
-            persistentJsonEntries.forEach(System.out::println);
+            persistentJsonEntries.stream().map(CompletableFuture::join).forEach(System.out::println);
 
         } else if (partialCredit) {
-            jsonEntries.forEach(System.out::println);
+            jsonEntries.stream().map(CompletableFuture::join).forEach(System.out::println);
         } else {
             // only show the failures
             jsonEntries.stream()
+                    .map(CompletableFuture::join)
                     .filter(s -> s.contains("\"status\": \"failed\""))
                     .forEach(System.out::println);
         }
     }
 
+    /**
+     * <p>Creates a JSON representation of a test result once its output is available.</p>
+     * <p>If the output failed to be produced (e.g. the graph could not be rendered), the test
+     * fails with the exception as its output, as if the test itself had thrown it.</p>
+     *
+     * @param score integer represents the score student gets
+     * @param max integer represents the maximum score possible
+     * @param name the name of the test
+     * @param output the pending text output of the test
+     * @param outputFormat the format of the output
+     * @param vis the visibility of the test
+     * @param isSanityCheck whether the test suite is a sanity check
+     * @return a future of the JSON string representing the test result
+     */
+    private static CompletableFuture<String> makeJsonAsync(int score, int max, String name,
+            CompletableFuture<String> output, TestOutputFormat outputFormat, Visibility vis, boolean isSanityCheck) {
+        return output.handle((out, ex) -> {
+            if (ex == null)
+                return makeJson(score, max, name, out, outputFormat, vis, isSanityCheck);
+            var cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            return makeJson(0, max, name, cause.getClass().getName() + ": " + cause.getMessage(),
+                    TestOutputFormat.TEXT, vis, isSanityCheck);
+        });
+    }
+
     /**
      * <p>Creates a JSON representation of a test result.</p>
      *
@@ -0,0 +1,179 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.nio.file.Path;
+import java.util.function.ToLongFunction;
+
+/**
+ * Options for {@link ForkJoinAnalyzer#analyze(Runnable, AnalysisOptions)}.
+ *
+ * @param clock     source of event timestamps
+ * @param streaming   compute work and span while the tasks run, without keeping
+ *                    the event log or building a {@link ForkJoinGraph}
+ * @param eventBudget maximum number of events (or, when streaming, of tracked
+ *                    tasks) kept in memory; see {@link #withEventBudget(long)}
+ * @param parallelism number of worker threads the tasks really run on, or 0 to
+ *                    run them one after another on the calling thread
+ * @param trace       file the recorded events are written to, or null; see
+ *                    {@link #withTrace(Path)}
+ * @param eventOverhead nanoseconds of instrumentation subtracted from every
+ *                    segment's duration, or {@link #CALIBRATE}; see
+ *                    {@link #withEventOverhead(long)}
+ * @param sizeHint    input size of a task, or null; see {@link #withSizeHint(ToLongFunction)}
+ * @param overheadThreshold work below which a leaf task is mostly overhead; see
+ *                    {@link #withOverheadThreshold(long)}
+ */
+public record AnalysisOptions(Clock clock, boolean streaming, long eventBudget, int parallelism, Path trace,
+        long eventOverhead, ToLongFunction<InstrumentedTask<?>> sizeHint, long overheadThreshold) {
+    /**
+     * About 100 MB of event log, and a graph that still builds in reasonable time.
+     */
+    public static final long DEFAULT_EVENT_BUDGET = 1L << 22;
+
+    /**
+     * {@link #eventOverhead()} that is measured on the running JVM, see
+     * {@link ForkJoinAnalyzer#calibrateEventOverhead(AnalysisOptions)}.
+     */
+    public static final long CALIBRATE = -1;
+
+    /**
+     * 10 microseconds: a leaf task should do much more than the microsecond or
+     * so it takes to create, fork and join it.
+     */
+    public static final long DEFAULT_OVERHEAD_THRESHOLD = 10_000;
+
+    public enum Clock {
+        /**
+         * Events are stamped with {@link System#nanoTime()}. Empirical metrics
+         * are in nanoseconds.
+         */
+        TIMED,
+        /**
+         * Events are stamped with a monotonic sequence number instead of reading
+         * the clock. Graphs are deterministic and reproducible across machines,
+         * and no two events ever share a timestamp. Only the structural metrics
+         * are meaningful; empirical metrics count events.
+         */
+        LOGICAL
+    }
+
+    /**
+     * @return the options used by {@link ForkJoinAnalyzer#analyze(Runnable)}.
+     */
+    public static AnalysisOptions defaults() {
+        return new AnalysisOptions(Clock.TIMED, false, DEFAULT_EVENT_BUDGET, 0, null, 0, null,
+                DEFAULT_OVERHEAD_THRESHOLD);
+    }
+
+    public AnalysisOptions withClock(Clock clock) {
+        return new AnalysisOptions(clock, streaming, eventBudget, parallelism, trace, eventOverhead, sizeHint,
+                overheadThreshold);
+    }
+
+    /**
+     * In streaming mode the result carries {@link ParallelismResult#metrics()}
+     * but no graph, and memory is proportional to the recursion depth rather
+     * than to the number of tasks.
+     */
+    public AnalysisOptions withStreaming(boolean streaming) {
+        return new AnalysisOptions(clock, streaming, eventBudget, parallelism, trace, eventOverhead, sizeHint,
+                overheadThreshold);
+    }
+
+    /**
+     * Caps the analyzer's memory so that the analysis of an unreasonable
+     * submission, rather than the submission itself, cannot exhaust the heap.
+     * <p>
+     * Once the event log reaches the budget, it is replayed into the streaming
+     * computation and dropped: the result has no graph, but work and span stay
+     * exact. If the streaming computation in turn has to track more tasks than
+     * the budget, it stops connecting tasks to their parents; work stays exact
+     * and span and final segment count become lower-bound estimates, as reported
+     * by {@link ForkJoinMetrics#estimated()}. Anti-patterns are no longer looked
+     * for either, see {@link ParallelismResult#antiPatternsComplete()}.
+     */
+    public AnalysisOptions withEventBudget(long eventBudget) {
+        return new AnalysisOptions(clock, streaming, eventBudget, parallelism, trace, eventOverhead, sizeHint,
+                overheadThreshold);
+    }
+
+    /**
+     * Runs forked tasks for real on a {@link java.util.concurrent.ForkJoinPool}
+     * with the given number of workers, so that
+     * {@link ParallelismResult#elapsedNanos()} shows actual speedup. Every thread
+     * records into its own buffer; the buffers are merged by timestamp when the
+     * run is over.
+     * <p>
+     * Since the order of events is only known after the merge, streaming
+     * happens at that point and does not save memory. All buffers together
+     * record at most the event budget, however many threads the pool adds;
+     * events past it are dropped, and all metrics of such a run are marked as
+     * estimated.
+     */
+    public AnalysisOptions withParallelism(int parallelism) {
+        return new AnalysisOptions(clock, streaming, eventBudget, parallelism, trace, eventOverhead, sizeHint,
+                overheadThreshold);
+    }
+
+    /**
+     * Writes every recorded event, with the task counters, to a compact binary
+     * trace file, so that the run can be analyzed again later with
+     * {@link ForkJoinAnalyzer#replay(Path)} without running the tasks. Events
+     * are written as they happen, so the trace is complete even when the event
+     * budget moves the analysis to streaming; only the events a threaded run
+     * drops past the budget are missing.
+     *
+     * @param trace file to create or overwrite, or null for no trace
+     */
+    public AnalysisOptions withTrace(Path trace) {
+        return new AnalysisOptions(clock, streaming, eventBudget, parallelism, trace, eventOverhead, sizeHint,
+                overheadThreshold);
+    }
+
+    /**
+     * Every segment of a timed run includes some of the analyzer's own work:
+     * reading the clock, recording the event, numbering tasks. For fine-grained
+     * tasks that can be most of what is measured. This much is subtracted from
+     * each segment's duration before empirical work and span are computed,
+     * never making a duration negative. The logical clock is never corrected.
+     *
+     * Calibration runs a few dozen analyses of its own the first time it is
+     * asked for, so it is opt-in.
+     *
+     * @param eventOverhead nanoseconds per segment, 0 (the default) to measure
+     *                      raw durations, or {@link #CALIBRATE} to use the
+     *                      overhead measured on this JVM
+     */
+    public AnalysisOptions withEventOverhead(long eventOverhead) {
+        return new AnalysisOptions(clock, streaming, eventBudget, parallelism, trace, eventOverhead, sizeHint,
+                overheadThreshold);
+    }
+
+    /**
+     * Asks every task for the size of its input as it starts, e.g.
+     * {@code hi - lo}, so that {@link Granularity#leafSize()} and
+     * {@link Granularity#cutoff()} can relate leaves to the sequential cutoff.
+     * The hint runs outside of the task's measured time. Sizes are not written
+     * to traces, so replays have none.
+     *
+     * @param sizeHint input size of a task, never negative; or null
+     */
+    public AnalysisOptions withSizeHint(ToLongFunction<InstrumentedTask<?>> sizeHint) {
+        return new AnalysisOptions(clock, streaming, eventBudget, parallelism, trace, eventOverhead, sizeHint,
+                overheadThreshold);
+    }
+
+    /**
+     * Leaf tasks doing less work than this count towards
+     * {@link Granularity#workBelowThreshold()}. In nanoseconds, or in events
+     * for {@link Clock#LOGICAL}, where every leaf does one event of work and
+     * only the size hints say anything about the cutoff. A parent doing less
+     * of its own work than this between forking a child and joining it counts
+     * as {@link AntiPattern.Kind#FORK_THEN_JOIN}.
+     *
+     * @param overheadThreshold work of a leaf, {@link #DEFAULT_OVERHEAD_THRESHOLD} by default
+     */
+    public AnalysisOptions withOverheadThreshold(long overheadThreshold) {
+        return new AnalysisOptions(clock, streaming, eventBudget, parallelism, trace, eventOverhead, sizeHint,
+                overheadThreshold);
+    }
+}
@@ -0,0 +1,151 @@
+package edu.washington.cse332.autograder.concurrent;
+
+/**
+ * Imitates a real {@link java.lang.Thread}, for submissions that start and
+ * join threads rather than fork and join tasks. Each thread is a task:
+ * {@link #start()} forks it and {@link #join()} joins it, so the analysis
+ * reports the same work, span and speedup as for tasks, and a thread that is
+ * never joined shows as {@link ParallelismResult#allForkedTasksJoined()}
+ * being false. Threads started outside of any task are forked by an implicit
+ * main task, counted as class {@code Main}, which stands for the code being
+ * analyzed.
+ * <p>
+ * Unless the analysis has {@link AnalysisOptions#parallelism()}, a thread runs
+ * as it is joined, as a forked task does, and one that is never joined runs
+ * as the analysis ends. Threads must therefore not wait for one another
+ * other than by joining. With parallelism, threads run on the analysis's
+ * worker threads, and the analysis waits for those never joined.
+ * <p>
+ * Submissions extend or create this class in place of
+ * {@code java.lang.Thread}. It is not named {@code Thread}, so importing
+ * this whole package never makes {@code Thread} ambiguous.
+ */
+public class AnalyzedThread implements Runnable {
+    private static int threadNumber;
+
+    private final Runnable target;
+    private String name;
+    private final Task task;
+    private boolean started = false;
+
+    /**
+     * The thread as a task, counted as the thread's class.
+     */
+    private final class Task extends InstrumentedTask<Void> {
+        private volatile boolean ran = false;
+        private volatile boolean finished = false;
+
+        Task() {
+            super(AnalyzedThread.this.getClass());
+        }
+
+        @Override
+        protected Void execute() {
+            if (ran)
+                return null;
+            ran = true;
+            logEnter();
+            AnalyzedThread.this.run();
+            logExit();
+            finished = true;
+            return null;
+        }
+    }
+
+    public AnalyzedThread() {
+        this(null, null);
+    }
+
+    public AnalyzedThread(Runnable target) {
+        this(target, null);
+    }
+
+    public AnalyzedThread(String name) {
+        this(null, name);
+    }
+
+    public AnalyzedThread(Runnable target, String name) {
+        this.target = target;
+        this.name = name != null ? name : nextName();
+        ForkJoinAnalyzer.shared().enterMainTask();
+        this.task = new Task();
+    }
+
+    private static synchronized String nextName() {
+        return "Thread-" + threadNumber++;
+    }
+
+    /**
+     * Overridden with what the thread does; runs the target by default.
+     * Calling this directly runs it in the caller, not as a thread.
+     */
+    @Override
+    public void run() {
+        if (target != null)
+            target.run();
+    }
+
+    public synchronized void start() {
+        if (started)
+            throw new BadParallelismException("Thread has already been started. Do not start it again.");
+        started = true;
+        task.fork();
+        ForkJoinAnalyzer.shared().threadStarted(this);
+    }
+
+    /**
+     * Waits for the thread to finish.
+     */
+    public final void join() throws InterruptedException {
+        if (!started)
+            throw new BadParallelismException("Thread has not been started. Do not call join.");
+        task.join();
+    }
+
+    /**
+     * Waits for the thread to finish, however long that takes: the analysis
+     * needs every thread that is waited for to have finished.
+     */
+    public final void join(long millis) throws InterruptedException {
+        join();
+    }
+
+    /**
+     * Exclusively called from {@link ForkJoinAnalyzer} as the main task exits:
+     * waits for the thread, running it if nothing else has.
+     */
+    void runUnjoined() {
+        task.awaitUnjoined();
+    }
+
+    public final boolean isAlive() {
+        return started && !task.finished;
+    }
+
+    public final String getName() {
+        return name;
+    }
+
+    public final void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Does nothing: every thread is waited for as the analysis ends.
+     */
+    public final void setDaemon(boolean on) {
+    }
+
+    public static java.lang.Thread currentThread() {
+        return java.lang.Thread.currentThread();
+    }
+
+    public static void sleep(long millis) throws InterruptedException {
+        java.lang.Thread.sleep(millis);
+    }
+
+    @Override
+    public String toString() {
+        return "Thread[" + name + "]";
+    }
+}
@@ -0,0 +1,55 @@
+package edu.washington.cse332.autograder.concurrent;
+
+/**
+ * A way of using fork and join that gives the right answer without any
+ * parallelism, found in the tasks of one class. See
+ * {@link ParallelismResult#antiPatterns()}.
+ *
+ * @param kind          what the tasks do
+ * @param taskClass     short name of the class whose {@code compute} does it
+ * @param occurrences   how often it happened
+ * @param exampleTaskId the task where it cost the most, to look up in the graph
+ * @param spanCost      how much shorter the critical path could be with that
+ *                      occurrence fixed, in the unit of
+ *                      {@link ForkJoinMetrics#empiricalCriticalPath()}. An upper
+ *                      bound: the child could at best run next to the rest of
+ *                      its parent. May be 0 where nothing was left to overlap.
+ */
+public record AntiPattern(Kind kind, String taskClass, long occurrences, long exampleTaskId, double spanCost) {
+    public enum Kind {
+        /**
+         * A task forks a child and joins it before doing anything else, while
+         * no other child is forked. The child runs while its parent only waits.
+         * Doing less than {@link AnalysisOptions#overheadThreshold()} of work
+         * in between counts as doing nothing.
+         */
+        FORK_THEN_JOIN("forks a task and joins it right away, so nothing runs in parallel with it; "
+                + "do other work, such as computing the other half, between fork() and join()"),
+        /**
+         * A task computes two or more children and forks none, so they run one
+         * after another.
+         */
+        COMPUTE_ALL("calls compute() on every subtask, so they run one after another; "
+                + "fork() all but one of them"),
+        /**
+         * A task calls {@link ForkJoinPool#invoke(InstrumentedTask)} while it is
+         * running, which waits for the new task as a compute would.
+         */
+        NESTED_INVOKE("calls pool.invoke() from inside compute(), which waits for the task to finish; "
+                + "fork() and join() subtasks instead");
+
+        private final String advice;
+
+        Kind(String advice) {
+            this.advice = advice;
+        }
+    }
+
+    /**
+     * @return a sentence for students
+     */
+    public String describe() {
+        return String.format("%s %s (%d time%s, e.g. task %d; up to %.0f off the critical path)", taskClass,
+                kind.advice, occurrences, occurrences == 1 ? "" : "s", exampleTaskId, spanCost);
+    }
+}
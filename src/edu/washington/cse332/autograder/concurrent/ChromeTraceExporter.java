@@ -0,0 +1,190 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes an event stream as Chrome Trace Event JSON, for Perfetto or
+ * {@code chrome://tracing}. See {@link ForkJoinAnalyzer#exportChromeTrace}.
+ * <p>
+ * Each task becomes a complete ({@code X}) slice from its enter to its exit,
+ * and forks, computes, joins and returns become flow arrows between slices.
+ * Slices are written as their task exits, so only tasks that are running, or
+ * finished and not yet joined, are kept in memory.
+ * <p>
+ * Events do not say which thread ran a task, so slices are packed into lanes
+ * (shown as threads) such that slices within a lane nest properly: a task
+ * goes into the first lane where it either encloses or follows every slice
+ * that ends after it starts. Inline runs, whose tasks nest on one call stack,
+ * use a single lane.
+ */
+final class ChromeTraceExporter implements ForkJoinTrace.Sink {
+    private static final int PID = 1;
+
+    /** A running task, and the flow ends on its slice that wait for its lane. */
+    private static final class Open {
+        final long enter;
+        /** The fork or compute flow that ends at this task's enter, or null. */
+        final FlowKind inbound;
+        /** Triples of timestamp, flow id and flow kind ordinal. */
+        long[] flows = new long[0];
+        int flowSize;
+
+        Open(long enter, FlowKind inbound) {
+            this.enter = enter;
+            this.inbound = inbound;
+        }
+
+        void add(long timestamp, long id, FlowKind kind) {
+            if (flowSize + 3 > flows.length)
+                flows = Arrays.copyOf(flows, Math.max(12, flows.length * 2));
+            flows[flowSize++] = timestamp;
+            flows[flowSize++] = id;
+            flows[flowSize++] = kind.ordinal();
+        }
+    }
+
+    private enum FlowKind {
+        FORK, COMPUTE, JOIN, RETURN;
+
+        static final FlowKind[] VALUES = values();
+        final String label = name().toLowerCase();
+    }
+
+    private final Appendable out;
+    private boolean started;
+    private long origin;
+    private final Map<Long, Open> open = new HashMap<>();
+    /** Children whose fork or compute flow started in a task, until they enter. */
+    private final Map<Long, FlowKind> announced = new HashMap<>();
+    /** Finished tasks until they are joined: lane and exit timestamp. */
+    private final Map<Long, long[]> exited = new HashMap<>();
+    /** Per lane, the outermost slices written so far that may still enclose or precede new ones: {start, end}. */
+    private final List<ArrayDeque<long[]>> lanes = new ArrayList<>();
+
+    ChromeTraceExporter(Appendable out) throws IOException {
+        this.out = out;
+        out.append("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[\n");
+        out.append("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":").append(String.valueOf(PID))
+                .append(",\"args\":{\"name\":\"fork join tasks\"}}");
+    }
+
+    @Override
+    public void accept(ForkJoinEvent kind, long taskId, long childId, long timestamp) throws IOException {
+        if (!started) {
+            started = true;
+            origin = timestamp;
+        }
+        switch (kind) {
+            case ENTER -> open.put(taskId, new Open(timestamp, announced.remove(taskId)));
+            case FORK, COMPUTE -> {
+                final var parent = open.get(taskId);
+                if (parent != null) {
+                    final var flow = kind == ForkJoinEvent.FORK ? FlowKind.FORK : FlowKind.COMPUTE;
+                    parent.add(timestamp, childId * 2, flow);
+                    announced.put(childId, flow);
+                }
+            }
+            case JOIN, COMPUTE_FINISHED -> {
+                final var child = exited.remove(childId);
+                final var parent = open.get(taskId);
+                if (child != null && parent != null) {
+                    final var flow = kind == ForkJoinEvent.JOIN ? FlowKind.JOIN : FlowKind.RETURN;
+                    flow(true, flow, childId * 2 + 1, (int) child[0], child[1]);
+                    parent.add(timestamp, childId * 2 + 1, flow);
+                }
+            }
+            case EXIT -> {
+                final var task = open.remove(taskId);
+                if (task == null)
+                    return;
+                final int lane = place(task.enter, timestamp);
+                out.append(",\n{\"name\":\"task ").append(String.valueOf(taskId))
+                        .append("\",\"ph\":\"X\",\"pid\":").append(String.valueOf(PID))
+                        .append(",\"tid\":").append(String.valueOf(lane + 1)).append(",\"ts\":");
+                micros(task.enter - origin);
+                out.append(",\"dur\":");
+                micros(timestamp - task.enter);
+                out.append('}');
+
+                if (task.inbound != null)
+                    flow(false, task.inbound, taskId * 2, lane, task.enter);
+                for (int i = 0; i < task.flowSize; i += 3) {
+                    final var flow = FlowKind.VALUES[(int) task.flows[i + 2]];
+                    final boolean start = flow == FlowKind.FORK || flow == FlowKind.COMPUTE;
+                    flow(start, flow, task.flows[i + 1], lane, task.flows[i]);
+                }
+                exited.put(taskId, new long[] { lane, timestamp });
+            }
+        }
+    }
+
+    /**
+     * Ends the JSON document.
+     */
+    void finish() throws IOException {
+        out.append("\n]}\n");
+    }
+
+    /**
+     * @return the lane of a slice from {@code start} to {@code end}, which
+     *         ends no earlier than every slice placed before it
+     */
+    private int place(long start, long end) throws IOException {
+        for (int lane = 0; lane < lanes.size(); lane++) {
+            final var slices = lanes.get(lane);
+            boolean fits = true;
+            // slices ending after start must lie within [start, end]
+            for (var it = slices.descendingIterator(); it.hasNext();) {
+                final var slice = it.next();
+                if (slice[1] <= start)
+                    break;
+                if (slice[0] < start) {
+                    fits = false;
+                    break;
+                }
+            }
+            if (fits) {
+                while (!slices.isEmpty() && slices.peekLast()[1] > start)
+                    slices.pollLast();
+                slices.addLast(new long[] { start, end });
+                return lane;
+            }
+        }
+        final var slices = new ArrayDeque<long[]>();
+        slices.addLast(new long[] { start, end });
+        lanes.add(slices);
+        out.append(",\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":").append(String.valueOf(PID))
+                .append(",\"tid\":").append(String.valueOf(lanes.size())).append(",\"args\":{\"name\":\"lane ")
+                .append(String.valueOf(lanes.size())).append("\"}}");
+        return lanes.size() - 1;
+    }
+
+    private void flow(boolean start, FlowKind kind, long id, int lane, long timestamp) throws IOException {
+        out.append(",\n{\"name\":\"").append(kind.label).append("\",\"cat\":\"").append(kind.label)
+                .append("\",\"ph\":\"").append(start ? 's' : 'f').append("\",\"bp\":\"e\",\"id\":")
+                .append(String.valueOf(id)).append(",\"pid\":").append(String.valueOf(PID)).append(",\"tid\":")
+                .append(String.valueOf(lane + 1)).append(",\"ts\":");
+        micros(timestamp - origin);
+        out.append('}');
+    }
+
+    /**
+     * Writes a non-negative time in nanoseconds as microseconds, keeping
+     * nanosecond precision.
+     */
+    private void micros(long nanos) throws IOException {
+        out.append(String.valueOf(nanos / 1000)).append('.');
+        final long fraction = nanos % 1000;
+        if (fraction < 100)
+            out.append('0');
+        if (fraction < 10)
+            out.append('0');
+        out.append(String.valueOf(fraction));
+    }
+}
@@ -0,0 +1,99 @@
+package edu.washington.cse332.autograder.concurrent;
+
+/**
+ * Asymptotic growth classes that {@link ScalingResult} tells apart.
+ */
+public enum Complexity {
+    CONSTANT("O(1)"),
+    LOGARITHMIC("O(log n)"),
+    SQUARE_ROOT("O(sqrt n)"),
+    LINEAR("O(n)"),
+    LINEARITHMIC("O(n log n)"),
+    QUADRATIC("O(n^2)");
+
+    /**
+     * Fits within this much of the best relative error still count as a fit,
+     * so that noise does not push the verdict to a faster growing class.
+     */
+    private static final double TOLERANCE = 1.25;
+
+    private final String notation;
+
+    Complexity(String notation) {
+        this.notation = notation;
+    }
+
+    double apply(double n) {
+        return switch (this) {
+            case CONSTANT -> 1;
+            case LOGARITHMIC -> Math.log(n);
+            case SQUARE_ROOT -> Math.sqrt(n);
+            case LINEAR -> n;
+            case LINEARITHMIC -> n * Math.log(n);
+            case QUADRATIC -> n * n;
+        };
+    }
+
+    /**
+     * Finds the slowest growing class whose best fit {@code y = a f(n) + b}
+     * (with {@code a > 0}) is about as good as the best fit of any class, in
+     * squared relative error.
+     *
+     * @param n input sizes, at least two distinct
+     * @param y measurement at each size
+     * @return the inferred class
+     */
+    static Complexity fit(double[] n, double[] y) {
+        final var values = values();
+        final double[] error = new double[values.length];
+        double best = Double.POSITIVE_INFINITY;
+        for (int c = 0; c < values.length; c++) {
+            error[c] = values[c].relativeError(n, y);
+            best = Math.min(best, error[c]);
+        }
+        for (int c = 0; c < values.length; c++)
+            if (error[c] <= best * TOLERANCE + 1e-12)
+                return values[c];
+        return QUADRATIC;
+    }
+
+    private double relativeError(double[] n, double[] y) {
+        final int k = n.length;
+        double a = 0, b;
+        if (this == CONSTANT) {
+            double sum = 0;
+            for (double v : y)
+                sum += v;
+            b = sum / k;
+        } else {
+            // least squares for y = a f + b
+            double sf = 0, sy = 0, sff = 0, sfy = 0;
+            for (int i = 0; i < k; i++) {
+                final double f = apply(n[i]);
+                sf += f;
+                sy += y[i];
+                sff += f * f;
+                sfy += f * y[i];
+            }
+            final double denominator = k * sff - sf * sf;
+            if (denominator > 0)
+                a = (k * sfy - sf * sy) / denominator;
+            if (a <= 0)
+                // decreasing or flat data does not grow like this class
+                return Double.POSITIVE_INFINITY;
+            b = (sy - a * sf) / k;
+        }
+
+        double error = 0;
+        for (int i = 0; i < k; i++) {
+            final double r = (y[i] - (a * apply(n[i]) + b)) / Math.max(1, Math.abs(y[i]));
+            error += r * r;
+        }
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return notation;
+    }
+}
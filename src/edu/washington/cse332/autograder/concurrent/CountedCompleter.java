@@ -0,0 +1,231 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is equivalent to
+ * {@link java.util.concurrent.CountedCompleter}
+ * that is capable of counting and analyzing calls to {@link #fork()} and
+ * {@link #compute()}.
+ * <p>
+ * A completer does not join its children; it completes once they have
+ * completed. In the task graph, that is a join from every child the task
+ * forked to the end of the task: after {@link #__impl_compute()} returns,
+ * the task waits for each child it forked, which also runs them when the
+ * analysis is not threaded. Completion itself ({@link #tryComplete()},
+ * {@link #onCompletion(CountedCompleter)}) happens exactly as with the real
+ * class, counting pending children down as they finish. Children must be
+ * forked from inside the task that created them, as is usual.
+ *
+ * @param <T> result type, {@code Void} if none
+ */
+public abstract class CountedCompleter<T> extends InstrumentedTask<T> {
+    /** The completer on this thread whose {@link #__impl_compute()} is running. */
+    private static final ThreadLocal<CountedCompleter<?>> running = new ThreadLocal<>();
+
+    private final CountedCompleter<?> completer;
+    private final AtomicInteger pending;
+    /** Children forked by this task, waited for once it has run. */
+    private final List<InstrumentedTask<?>> forked = new ArrayList<>();
+    private volatile boolean completed;
+
+    protected CountedCompleter(CountedCompleter<?> completer, int initialPendingCount) {
+        this.completer = completer;
+        this.pending = new AtomicInteger(initialPendingCount);
+    }
+
+    protected CountedCompleter(CountedCompleter<?> completer) {
+        this(completer, 0);
+    }
+
+    protected CountedCompleter() {
+        this(null, 0);
+    }
+
+    /**
+     * We rename the compute definition in the student submission to
+     * {@link #__impl_compute()}
+     * Leaving the body alone lets us log recursive calls to {@link #compute()}.
+     */
+    protected abstract void __impl_compute();
+
+    /**
+     * Recursively called from {@link #__impl_compute()}.
+     */
+    public final void compute() {
+        logCompute();
+        execute();
+        logComputeFinished();
+    }
+
+    @Override
+    protected final T execute() {
+        final var outer = running.get();
+        running.set(this);
+        logEnter();
+        try {
+            __impl_compute();
+        } finally {
+            running.set(outer);
+        }
+        // the forked children complete before this task can
+        for (int i = 0; i < forked.size(); i++)
+            forked.get(i).join();
+        forked.clear();
+        logExit();
+        return getRawResult();
+    }
+
+    @Override
+    void onFork() {
+        final var current = running.get();
+        if (current != null && current.id() == parentId())
+            current.forked.add(this);
+    }
+
+    // #region java.util.concurrent.CountedCompleter
+    /**
+     * Called when the pending count is zero as {@link #tryComplete()} is
+     * invoked, or by {@link #complete(Object)}. Does nothing by default.
+     *
+     * @param caller the task invoking this method, possibly this task
+     */
+    public void onCompletion(CountedCompleter<?> caller) {
+    }
+
+    public final CountedCompleter<?> getCompleter() {
+        return completer;
+    }
+
+    public final int getPendingCount() {
+        return pending.get();
+    }
+
+    public final void setPendingCount(int count) {
+        pending.set(count);
+    }
+
+    public final void addToPendingCount(int delta) {
+        pending.addAndGet(delta);
+    }
+
+    public final boolean compareAndSetPendingCount(int expected, int count) {
+        return pending.compareAndSet(expected, count);
+    }
+
+    /**
+     * @return the pending count before, which is only decremented if nonzero
+     */
+    public final int decrementPendingCountUnlessZero() {
+        int c;
+        do {
+            c = pending.get();
+        } while (c != 0 && !pending.compareAndSet(c, c - 1));
+        return c;
+    }
+
+    public final CountedCompleter<?> getRoot() {
+        CountedCompleter<?> a = this;
+        while (a.completer != null)
+            a = a.completer;
+        return a;
+    }
+
+    /**
+     * If the pending count is nonzero, decrements it; otherwise calls
+     * {@link #onCompletion(CountedCompleter)} and does the same for this
+     * task's completer, or completes this task if there is none.
+     */
+    public final void tryComplete() {
+        CountedCompleter<?> a = this, s = a;
+        while (true) {
+            if (a.pending.get() == 0) {
+                a.onCompletion(s);
+                if ((a = (s = a).completer) == null) {
+                    s.quietlyComplete();
+                    return;
+                }
+            } else if (a.decrementPendingCountUnlessZero() != 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * As {@link #tryComplete()}, without calling
+     * {@link #onCompletion(CountedCompleter)}.
+     */
+    public final void propagateCompletion() {
+        CountedCompleter<?> a = this, s;
+        while (true) {
+            if (a.pending.get() == 0) {
+                if ((a = (s = a).completer) == null) {
+                    s.quietlyComplete();
+                    return;
+                }
+            } else if (a.decrementPendingCountUnlessZero() != 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Completes this task with a result regardless of the pending count,
+     * calls {@link #onCompletion(CountedCompleter)}, and tries to complete
+     * this task's completer.
+     */
+    public void complete(T rawResult) {
+        setRawResult(rawResult);
+        onCompletion(this);
+        quietlyComplete();
+        if (completer != null)
+            completer.tryComplete();
+    }
+
+    /**
+     * @return this task if the pending count is zero, otherwise null after
+     *         decrementing it
+     */
+    public final CountedCompleter<?> firstComplete() {
+        return decrementPendingCountUnlessZero() == 0 ? this : null;
+    }
+
+    /**
+     * @return the completer's {@link #firstComplete()}, or null after
+     *         completing this task if it has no completer
+     */
+    public final CountedCompleter<?> nextComplete() {
+        if (completer != null)
+            return completer.firstComplete();
+        quietlyComplete();
+        return null;
+    }
+
+    public final void quietlyCompleteRoot() {
+        getRoot().quietlyComplete();
+    }
+
+    public final void quietlyComplete() {
+        completed = true;
+    }
+
+    public final boolean isDone() {
+        return completed;
+    }
+
+    /**
+     * @return the result of the computation, null by default
+     */
+    public T getRawResult() {
+        return null;
+    }
+
+    /**
+     * Sets the result, see {@link #complete(Object)}. Does nothing by default.
+     */
+    protected void setRawResult(T t) {
+    }
+    // #endregion
+}
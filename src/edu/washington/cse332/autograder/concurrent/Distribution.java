@@ -0,0 +1,92 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.util.List;
+
+/**
+ * Samples of one metric over repeated runs, see {@link RepeatedResult}.
+ *
+ * @param samples the measured values, in increasing order
+ */
+public record Distribution(List<Double> samples) {
+    /** Two-sided 95% normal quantile, for {@link #medianLower()} and {@link #medianUpper()}. */
+    private static final double Z_95 = 1.959964;
+
+    public Distribution {
+        if (samples.isEmpty())
+            throw new IllegalArgumentException("A distribution needs at least one sample");
+        samples = samples.stream().sorted().toList();
+    }
+
+    public double min() {
+        return samples.getFirst();
+    }
+
+    public double max() {
+        return samples.getLast();
+    }
+
+    public double median() {
+        return percentile(50);
+    }
+
+    /**
+     * @param p percentage between 0 and 100
+     * @return the {@code p}-th percentile, interpolated between the closest samples
+     */
+    public double percentile(double p) {
+        final double rank = Math.clamp(p, 0, 100) / 100 * (samples.size() - 1);
+        final int below = (int) Math.floor(rank);
+        final int above = Math.min(below + 1, samples.size() - 1);
+        return samples.get(below) + (rank - below) * (samples.get(above) - samples.get(below));
+    }
+
+    public double mean() {
+        double sum = 0;
+        for (double sample : samples)
+            sum += sample;
+        return sum / samples.size();
+    }
+
+    /**
+     * @return sample standard deviation, 0 for a single sample
+     */
+    public double standardDeviation() {
+        if (samples.size() < 2)
+            return 0;
+        final double mean = mean();
+        double squares = 0;
+        for (double sample : samples)
+            squares += (sample - mean) * (sample - mean);
+        return Math.sqrt(squares / (samples.size() - 1));
+    }
+
+    /**
+     * Lower end of an approximate 95% confidence interval for the median. The
+     * interval is formed by two order statistics, so it makes no assumption
+     * about the shape of the distribution; timing outliers from GC pauses or
+     * JIT compilation do not widen it as they would a mean &plusmn; deviation.
+     * With few samples it is simply the full range.
+     */
+    public double medianLower() {
+        final int n = samples.size();
+        return samples.get(Math.max(0, (int) Math.round(n / 2.0 - Z_95 * Math.sqrt(n) / 2) - 1));
+    }
+
+    /**
+     * Upper end of the confidence interval for the median, see {@link #medianLower()}.
+     */
+    public double medianUpper() {
+        final int n = samples.size();
+        return samples.get(Math.min(n - 1, (int) Math.round(1 + n / 2.0 + Z_95 * Math.sqrt(n) / 2) - 1));
+    }
+
+    /**
+     * @return half the width of the median's confidence interval, relative to
+     *         the median; 0 if everything is 0
+     */
+    public double relativeUncertainty() {
+        final double median = median();
+        final double halfWidth = (medianUpper() - medianLower()) / 2;
+        return halfWidth == 0 ? 0 : halfWidth / Math.abs(median);
+    }
+}
@@ -1,16 +1,37 @@
 package edu.washington.cse332.autograder.concurrent;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
 
 /**
  * Fork Join Analyzer. Must be used with subtypes of {@link InstrumentedTask}
- * provided in this package.
+ * provided in this package, or with {@link AnalyzedThread}.
  * 
  * @author Albert Du
  */
 public final class ForkJoinAnalyzer {
     private ForkJoinAnalyzer() {
-        reset();
+        reset(AnalysisOptions.defaults());
+    }
+
+    /**
+     * A worker's recorder for an analysis running on real threads.
+     *
+     * @param session the analyzer of the thread that called {@link #analyze(Runnable, AnalysisOptions)}
+     */
+    private ForkJoinAnalyzer(ForkJoinAnalyzer session) {
+        reset(session.options.withParallelism(0).withTrace(null));
+        this.session = session;
+        executor = session.executor;
+        ids = session.ids;
+        clock = session.clock;
+        unrecorded = session.unrecorded;
     }
 
     // Default value for each thread
@@ -23,9 +44,250 @@ public final class ForkJoinAnalyzer {
      * @return ParallelismResult of analysis
      */
     public static ParallelismResult analyze(Runnable r) {
-        shared().reset();
-        r.run();
-        return shared().analyze();
+        return analyze(r, AnalysisOptions.defaults());
+    }
+
+    /**
+     * Analyze a Runnable that uses Fork Join tasks.
+     *
+     * @param r       Runnable to be analyzed
+     * @param options how events are recorded, e.g. {@link AnalysisOptions.Clock#LOGICAL}
+     *                for reproducible structural metrics
+     * @return ParallelismResult of analysis
+     */
+    public static ParallelismResult analyze(Runnable r, AnalysisOptions options) {
+        if (options.clock() == AnalysisOptions.Clock.TIMED && options.eventOverhead() == AnalysisOptions.CALIBRATE)
+            // before reset: calibration runs analyses of its own on this thread
+            options = options.withEventOverhead(calibrateEventOverhead(options));
+        final var analyzer = shared();
+        analyzer.reset(options);
+        final long start = System.nanoTime();
+        try {
+            r.run();
+            analyzer.exitMainTask();
+        } catch (RuntimeException | Error e) {
+            // the trace stays incomplete and is rejected by replay
+            analyzer.closeTrace();
+            throw e;
+        } finally {
+            analyzer.stopWorkers();
+        }
+        final long elapsed = System.nanoTime() - start;
+        return analyzer.analyze(elapsed);
+    }
+
+    /**
+     * Analyze a trace written by a run with {@link AnalysisOptions#withTrace(Path)},
+     * without running any tasks. The file is memory-mapped and read once.
+     *
+     * @param trace the trace file
+     * @return ParallelismResult of analysis, as the original run returned it
+     * @throws IOException if the trace cannot be read or is incomplete
+     */
+    public static ParallelismResult replay(Path trace) throws IOException {
+        return replay(trace, AnalysisOptions.defaults());
+    }
+
+    /**
+     * Analyze a trace written by a run with {@link AnalysisOptions#withTrace(Path)},
+     * without running any tasks.
+     *
+     * @param trace   the trace file
+     * @param options only {@link AnalysisOptions#streaming()} and
+     *                {@link AnalysisOptions#eventBudget()} apply, as for a run, and
+     *                {@link AnalysisOptions#eventOverhead()}, where
+     *                {@link AnalysisOptions#CALIBRATE} stands for the overhead the
+     *                recording run used
+     * @return ParallelismResult of analysis
+     * @throws IOException if the trace cannot be read or is incomplete
+     */
+    public static ParallelismResult replay(Path trace, AnalysisOptions options) throws IOException {
+        final long overhead = options.eventOverhead() == AnalysisOptions.CALIBRATE
+                ? ForkJoinTrace.eventOverhead(trace)
+                : options.eventOverhead();
+        // a private analyzer, so that replaying never disturbs a run on this thread
+        final var analyzer = new ForkJoinAnalyzer();
+        analyzer.reset(options.withClock(AnalysisOptions.Clock.TIMED).withParallelism(0).withTrace(null)
+                .withEventOverhead(overhead));
+        final var counters = ForkJoinTrace.read(trace, analyzer::record);
+        return analyzer.result(analyzer.eventLog, counters);
+    }
+
+    /**
+     * Analyze a workload at input sizes {@code minSize}, {@code 2 minSize}, ...
+     * up to {@code maxSize}, and infer how its work and span grow.
+     *
+     * @param workload Runnable to be analyzed for a given input size
+     * @param minSize  smallest input size, at least 1
+     * @param maxSize  largest input size, at least {@code 4 minSize}: two points fit any
+     *                 class, so three sizes are needed to tell classes apart
+     * @param options  how events are recorded; {@link AnalysisOptions.Clock#LOGICAL} with
+     *                 streaming is the cheapest and is deterministic
+     * @return work and span at each size, and their inferred classes
+     * @throws IllegalArgumentException if the range gives fewer than three sizes
+     */
+    public static ScalingResult analyzeScaling(IntFunction<Runnable> workload, int minSize, int maxSize,
+            AnalysisOptions options) {
+        if (minSize < 1)
+            throw new IllegalArgumentException("minSize must be at least 1, got " + minSize);
+        if (4L * minSize > maxSize)
+            throw new IllegalArgumentException("sizes " + minSize + " to " + maxSize
+                    + " give fewer than three sizes; maxSize must be at least 4 minSize");
+        final var sizes = new ArrayList<Integer>();
+        final var metrics = new ArrayList<ForkJoinMetrics>();
+        for (long n = minSize; n <= maxSize; n *= 2) {
+            // the thread's analyzer keeps its buffers between runs
+            sizes.add((int) n);
+            metrics.add(analyze(workload.apply((int) n), options).metrics());
+        }
+
+        final double[] n = new double[sizes.size()];
+        final double[] work = new double[sizes.size()];
+        final double[] span = new double[sizes.size()];
+        for (int i = 0; i < n.length; i++) {
+            n[i] = sizes.get(i);
+            work[i] = metrics.get(i).structuralWork();
+            span[i] = metrics.get(i).structuralCriticalPath();
+        }
+        return new ScalingResult(sizes, metrics, Complexity.fit(n, work), Complexity.fit(n, span));
+    }
+
+    /**
+     * Analyze a workload over a geometric series of input sizes with the
+     * logical clock, in streaming mode.
+     *
+     * @see #analyzeScaling(IntFunction, int, int, AnalysisOptions)
+     */
+    public static ScalingResult analyzeScaling(IntFunction<Runnable> workload, int minSize, int maxSize) {
+        return analyzeScaling(workload, minSize, maxSize,
+                AnalysisOptions.defaults().withClock(AnalysisOptions.Clock.LOGICAL).withStreaming(true));
+    }
+
+    /**
+     * Analyze a workload several times and summarize how its empirical metrics
+     * vary. Warm-up runs let the JIT compile the workload and the analyzer grow
+     * its buffers; they are analyzed like the others but not reported. Only the
+     * metrics of each run are kept, not its graph.
+     *
+     * @param r          Runnable to be analyzed; it must do the same work every time
+     * @param warmup     number of unreported runs first
+     * @param iterations number of measured runs, at least 1
+     * @param options    how events are recorded; a trace, if any, holds the last run
+     * @return distributions of the empirical metrics over the measured runs
+     */
+    public static RepeatedResult analyzeRepeated(Runnable r, int warmup, int iterations, AnalysisOptions options) {
+        if (iterations < 1)
+            throw new IllegalArgumentException("iterations must be at least 1, got " + iterations);
+        if (options.clock() == AnalysisOptions.Clock.TIMED && options.eventOverhead() == AnalysisOptions.CALIBRATE)
+            options = options.withEventOverhead(calibrateEventOverhead(options));
+
+        for (int i = 0; i < warmup; i++)
+            analyze(r, options);
+        final var metrics = new ArrayList<ForkJoinMetrics>(iterations);
+        final var work = new ArrayList<Double>(iterations);
+        final var span = new ArrayList<Double>(iterations);
+        final var speedup = new ArrayList<Double>(iterations);
+        final var elapsed = new ArrayList<Double>(iterations);
+        for (int i = 0; i < iterations; i++) {
+            // the thread's analyzer keeps its buffers between runs
+            final var result = analyze(r, options);
+            metrics.add(result.metrics());
+            work.add(result.metrics().empiricalWork());
+            span.add(result.metrics().empiricalCriticalPath());
+            speedup.add(result.metrics().empiricalSpeedup());
+            elapsed.add((double) result.elapsedNanos());
+        }
+        return new RepeatedResult(metrics, new Distribution(work), new Distribution(span), new Distribution(speedup),
+                new Distribution(elapsed));
+    }
+
+    /**
+     * Analyze a workload 30 times after 10 warm-up runs, with the default options.
+     *
+     * @see #analyzeRepeated(Runnable, int, int, AnalysisOptions)
+     */
+    public static RepeatedResult analyzeRepeated(Runnable r) {
+        return analyzeRepeated(r, 10, 30, AnalysisOptions.defaults());
+    }
+
+    // calibration workload, see calibrateEventOverhead(AnalysisOptions): a tree of 2^11 - 1 tasks
+    private static final int CALIBRATION_DEPTH = 10;
+    private static final int CALIBRATION_WARMUP = 20;
+    private static final int CALIBRATION_ROUNDS = 10;
+    /** Measured overhead when recording into the event log, and when streaming. */
+    private static final long[] calibratedOverhead = { AnalysisOptions.CALIBRATE, AnalysisOptions.CALIBRATE };
+
+    /**
+     * Measures how much of each segment of a timed run is the analyzer's own
+     * work on this JVM and machine. Tasks that do nothing but fork, compute and
+     * join are analyzed until the JIT has compiled the instrumentation, and the
+     * lowest mean segment length over a few more rounds is taken. Runs once
+     * per JVM and recording mode, the first time a timed analysis asks for
+     * {@link AnalysisOptions#CALIBRATE}.
+     *
+     * @param options only {@link AnalysisOptions#streaming()} matters; streaming
+     *                does more work per event than appending to the event log
+     * @return nanoseconds of instrumentation per segment
+     */
+    public static synchronized long calibrateEventOverhead(AnalysisOptions options) {
+        final int mode = options.streaming() ? 1 : 0;
+        long overhead = calibratedOverhead[mode];
+        if (overhead == AnalysisOptions.CALIBRATE) {
+            final var calibration = AnalysisOptions.defaults().withStreaming(options.streaming()).withEventOverhead(0);
+            overhead = Long.MAX_VALUE;
+            for (int round = 0; round < CALIBRATION_WARMUP + CALIBRATION_ROUNDS; round++) {
+                final var result = analyze(
+                        () -> ForkJoinPool.commonPool().invoke(new CalibrationTask(CALIBRATION_DEPTH)), calibration);
+                if (round >= CALIBRATION_WARMUP)
+                    overhead = Math.min(overhead,
+                            (long) (result.metrics().empiricalWork() / result.metrics().structuralWork()));
+            }
+            calibratedOverhead[mode] = overhead;
+        }
+        return overhead;
+    }
+
+    /**
+     * The calibration workload: a binary tree of tasks with empty bodies.
+     */
+    private static final class CalibrationTask extends RecursiveAction {
+        private final int depth;
+
+        CalibrationTask(int depth) {
+            this.depth = depth;
+        }
+
+        @Override
+        protected void __impl_compute() {
+            if (depth == 0)
+                return;
+            final var left = new CalibrationTask(depth - 1);
+            final var right = new CalibrationTask(depth - 1);
+            left.fork();
+            right.compute();
+            left.join();
+        }
+    }
+
+    /**
+     * Convert a trace written by a run with {@link AnalysisOptions#withTrace(Path)}
+     * to Chrome Trace Event JSON, which Perfetto ({@code ui.perfetto.dev}) and
+     * {@code chrome://tracing} display as a timeline. Every task is a slice from
+     * its start to its end, and forks, computes, joins and returns are arrows
+     * between slices. Timestamps are in nanoseconds, or in events for
+     * {@link AnalysisOptions.Clock#LOGICAL}.
+     * <p>
+     * The trace is read and the JSON written as a stream; memory is only needed
+     * for tasks that are running or waiting to be joined.
+     *
+     * @param trace the trace file
+     * @param out   where to write the JSON, e.g. a buffered file writer
+     * @throws IOException if the trace cannot be read or is incomplete, or writing fails
+     */
+    public static void exportChromeTrace(Path trace, Appendable out) throws IOException {
+        final var exporter = new ChromeTraceExporter(out);
+        ForkJoinTrace.read(trace, exporter);
+        exporter.finish();
     }
 
     /**
@@ -37,33 +299,167 @@ public final class ForkJoinAnalyzer {
         return sharedLocal.get();
     }
 
+    /**
+     * Makes {@code analyzer} the current thread's analyzer.
+     */
+    static void setShared(ForkJoinAnalyzer analyzer) {
+        sharedLocal.set(analyzer);
+    }
+
+    /**
+     * Short names of task classes, indexed by class id. Only ever appended to.
+     */
+    private static final List<String> classNames = new ArrayList<>();
+
+    /**
+     * Interns every task class once into a small dense id, so that per-class
+     * counters are plain array slots. See {@link #classIdOf(Class)}.
+     */
+    private static final ClassValue<Integer> classIds = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            final var name = type.getName();
+            synchronized (classNames) {
+                classNames.add(name.substring(name.lastIndexOf('$') + 1));
+                return classNames.size() - 1;
+            }
+        }
+    };
+
     // Fields: these should be cleared when reset.
+    private AnalysisOptions options;
     private long taskCount;
     private long forkCalls;
     private long poolInvokes;
     private long computeCalls;
     private long executingTask;
-    private final Map<String, Long> perClassCount = new HashMap<>();
-    private final Map<String, Long> perClassForkCalls = new HashMap<>();
-    private final Map<String, Long> perClassComputeCalls = new HashMap<>();
-    private final Map<Long, String> idToClassName = new HashMap<>();
-    private final List<ForkJoinEvent> eventLog = new ArrayList<>();
+    /** The implicit task of code outside any task that uses threads, see {@link #enterMainTask()}; -1 if none. */
+    private long mainTask;
+    /** Threads started in this session, waited for as the main task exits; guarded by itself. */
+    private final List<AnalyzedThread> startedThreads = new ArrayList<>();
+    private boolean logicalClock;
+    private boolean streaming;
+    private long eventBudget;
+    /** Nanoseconds subtracted from every segment, see {@link AnalysisOptions#eventOverhead()}. */
+    private long eventOverhead;
+    private long sequence;
+    /** Set once a worker's buffer dropped events past the event budget. */
+    private boolean truncated;
+    // per-class counters, indexed by class id
+    private long[] perClassCount = new long[16];
+    private long[] perClassForkCalls = new long[16];
+    private long[] perClassComputeCalls = new long[16];
+    private final ForkJoinEventLog eventLog = new ForkJoinEventLog();
+    private final OnlineWorkSpan online = new OnlineWorkSpan();
+    private final GranularityProfile granularity = new GranularityProfile();
+    private final PatternDetector patterns = new PatternDetector(granularity);
+    /** Where events go as they are recorded, with {@link AnalysisOptions#trace()}. */
+    private ForkJoinTrace trace;
+
+    // Only with AnalysisOptions#parallelism() > 0; shared between the session and its workers.
+    private ForkJoinAnalyzer session = this;
+    private java.util.concurrent.ForkJoinPool executor;
+    private AtomicLong ids;
+    private AtomicLong clock;
+    /** Events the buffers of all workers may still record, however many workers the pool adds. */
+    private AtomicLong unrecorded;
+    /** Each worker thread's recorder, so that recording never contends on a lock. */
+    private Map<java.lang.Thread, ForkJoinAnalyzer> workers;
 
     /**
      * Resets the analyzer's state. Call this before fork join timings are desired
      * or after to clean up.
      */
-    private void reset() {
+    private void reset(AnalysisOptions options) {
+        this.options = options;
+        logicalClock = options.clock() == AnalysisOptions.Clock.LOGICAL;
+        streaming = options.streaming();
+        eventBudget = options.eventBudget();
+        // unresolved CALIBRATE only reaches here for analyzers that never run tasks
+        eventOverhead = logicalClock ? 0 : Math.max(0, options.eventOverhead());
+        sequence = 0;
+        truncated = false;
         taskCount = 0;
         executingTask = -1;
+        mainTask = -1;
+        synchronized (startedThreads) {
+            startedThreads.clear();
+        }
         forkCalls = 0;
         computeCalls = 0;
         poolInvokes = 0;
-        perClassCount.clear();
-        perClassForkCalls.clear();
-        perClassComputeCalls.clear();
-        idToClassName.clear();
+        Arrays.fill(perClassCount, 0);
+        Arrays.fill(perClassForkCalls, 0);
+        Arrays.fill(perClassComputeCalls, 0);
         eventLog.clear();
+        online.reset(eventBudget, eventOverhead);
+        patterns.reset(eventBudget, eventOverhead, options.overheadThreshold());
+        granularity.reset(options.overheadThreshold());
+        closeTrace();
+        if (options.trace() != null) {
+            try {
+                trace = new ForkJoinTrace(options.trace(), eventOverhead);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        executor = null;
+        ids = null;
+        clock = null;
+        unrecorded = null;
+        workers = null;
+        if (options.parallelism() > 0) {
+            executor = new java.util.concurrent.ForkJoinPool(options.parallelism());
+            ids = new AtomicLong();
+            clock = new AtomicLong();
+            workers = new ConcurrentHashMap<>();
+            unrecorded = new AtomicLong(eventBudget);
+        }
+    }
+
+    private void closeTrace() {
+        if (trace == null)
+            return;
+        try {
+            trace.close();
+        } catch (IOException e) {
+            // the trace is incomplete anyway
+        }
+        trace = null;
+    }
+
+    private void stopWorkers() {
+        if (executor == null)
+            return;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            java.lang.Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return whether tasks run on the worker threads of {@link #executor()}
+     */
+    boolean isThreaded() {
+        return executor != null;
+    }
+
+    java.util.concurrent.ForkJoinPool executor() {
+        return executor;
+    }
+
+    ForkJoinAnalyzer session() {
+        return session;
+    }
+
+    /**
+     * @return the recorder of the given worker thread in this session
+     */
+    ForkJoinAnalyzer workerFor(java.lang.Thread thread) {
+        return workers.computeIfAbsent(thread, t -> new ForkJoinAnalyzer(this));
     }
 
     /**
@@ -71,73 +467,272 @@ public final class ForkJoinAnalyzer {
      *
      * @return Results, including graph information and task counts.
      */
-    private ParallelismResult analyze() {
+    private ParallelismResult analyze(long elapsedNanos) {
+        final var log = isThreaded() ? collectWorkers() : eventLog;
+
+        // gather the per-class counters by name; distinct classes may share a short name
+        Map<String, Long> perTaskCount = new HashMap<>();
+        Map<String, Long> perTaskComputes = new HashMap<>();
+        Map<String, Long> perTaskForks = new HashMap<>();
+        for (int classId = 0; classId < perClassCount.length; classId++) {
+            if (perClassCount[classId] == 0)
+                continue;
+            String cname = className(classId);
+            perTaskCount.merge(cname, perClassCount[classId], Long::sum);
+            perTaskComputes.merge(cname, perClassComputeCalls[classId], Long::sum);
+            perTaskForks.merge(cname, perClassForkCalls[classId], Long::sum);
+        }
+        final List<String> names;
+        synchronized (classNames) {
+            names = List.copyOf(classNames);
+        }
+        final var counters = new ForkJoinTrace.Counters(taskCount, forkCalls, computeCalls, poolInvokes,
+                elapsedNanos, truncated, perTaskCount, perTaskForks, perTaskComputes, names);
+
+        if (trace != null) {
+            final var out = trace;
+            trace = null;
+            try {
+                // buffered events are only in order once merged
+                if (isThreaded())
+                    for (int i = 0; i < log.size(); i++)
+                        out.event(log.kind(i), log.taskId(i), log.childId(i), log.timestamp(i));
+                out.finish(counters);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return result(log, counters);
+    }
+
+    /**
+     * Builds the result from recorded events and counters, of a run or of a trace.
+     */
+    private ParallelismResult result(ForkJoinEventLog log, ForkJoinTrace.Counters counters) {
         // one compute call is expected to be the initial call
-        var computeRatio = computeCalls + forkCalls > 0 ? (double)(computeCalls) / (computeCalls + forkCalls) : 1;
-        
+        final long computes = counters.computeCalls(), forks = counters.forkCalls();
+        var computeRatio = computes + forks > 0 ? (double)(computes) / (computes + forks) : 1;
+
         // calculate the per-class compute ratios
         Map<String, Double> perClassComputeRatio = new HashMap<>();
-        for (var entry : perClassCount.entrySet()) {
-            String cname = entry.getKey();
-            long computes = perClassComputeCalls.getOrDefault(cname, 0L);
-            long forks = perClassForkCalls.getOrDefault(cname, 0L);
-            double ratio = computes + forks > 0 ? (double)(computes) / (computes + forks) : 1;
+        for (String cname : counters.perTaskCount().keySet()) {
+            long classComputes = counters.perTaskComputes().get(cname);
+            long classForks = counters.perTaskForks().get(cname);
+            double ratio = classComputes + classForks > 0 ? (double)(classComputes) / (classComputes + classForks) : 1;
             perClassComputeRatio.put(cname, ratio);
         }
-        return new ParallelismResult(ForkJoinGraph.create(eventLog), taskCount, Map.copyOf(perClassCount), computeRatio, perClassComputeRatio, poolInvokes);
+        if (isThreaded()) {
+            // the buffers could only be put in order now
+            final boolean stream = streaming || counters.truncated();
+            for (int i = 0; i < log.size(); i++) {
+                patterns.accept(log.kind(i), log.taskId(i), log.childId(i), log.timestamp(i));
+                if (stream)
+                    online.accept(log.kind(i), log.taskId(i), log.childId(i), log.timestamp(i));
+            }
+            streaming = stream;
+        }
+        final var graph = streaming ? null : ForkJoinGraph.create(log, eventOverhead);
+        var metrics = streaming ? online.metrics() : graph.metrics();
+        if (counters.truncated())
+            metrics = metrics.withEstimated(EnumSet.allOf(ForkJoinMetrics.Metric.class));
+        return new ParallelismResult(graph, counters.taskCount(), Map.copyOf(counters.perTaskCount()), computeRatio,
+                perClassComputeRatio, counters.poolInvokes(), metrics, counters.elapsedNanos(),
+                patterns.antiPatterns(counters.classNames()), patterns.complete(),
+                granularity.granularity(counters.classNames(), metrics.empiricalWork()));
+    }
+
+    /**
+     * Adds every worker's counters to this analyzer's, and moves every buffer's
+     * events into one log.
+     *
+     * @return all recorded events, merged into timestamp order
+     */
+    private ForkJoinEventLog collectWorkers() {
+        final var logs = new ArrayList<ForkJoinEventLog>();
+        logs.add(eventLog);
+        for (var worker : workers.values()) {
+            taskCount += worker.taskCount;
+            forkCalls += worker.forkCalls;
+            computeCalls += worker.computeCalls;
+            poolInvokes += worker.poolInvokes;
+            truncated |= worker.truncated;
+            granularity.addSizes(worker.granularity);
+            ensureClassCapacity(worker.perClassCount.length - 1);
+            for (int classId = 0; classId < worker.perClassCount.length; classId++) {
+                perClassCount[classId] += worker.perClassCount[classId];
+                perClassForkCalls[classId] += worker.perClassForkCalls[classId];
+                perClassComputeCalls[classId] += worker.perClassComputeCalls[classId];
+            }
+            logs.add(worker.eventLog);
+        }
+        return ForkJoinEventLog.merge(logs);
     }
 
     /**
      * For debugging. Immediately prints the recorded event log to System.out.
      */
     public void dump() {
-        for (var event : eventLog)
-            System.out.println(event);
+        for (int i = 0; i < eventLog.size(); i++)
+            System.out.println(eventLog.describe(i));
     }
 
     /**
      * For {@link InstrumentedTask}.
      *
-     * @return a new Identifier.
+     * @return the class id of tasks of the given class
      */
-    <T> long makeId(InstrumentedTask<T> task) {
-        final var cnameTokens = task.getClass().getName().split("\\$");
-        final var cname = cnameTokens[cnameTokens.length - 1];
+    static int classIdOf(Class<?> type) {
+        return classIds.get(type);
+    }
 
-        if (perClassCount.containsKey(cname))
-            perClassCount.put(cname, perClassCount.get(cname) + 1);
-        else
-            perClassCount.put(cname, 1L);
+    /**
+     * For {@link InstrumentedTask}.
+     *
+     * @param classId of the new task, see {@link #classIdOf(Class)}
+     * @return a new Identifier.
+     */
+    long makeId(int classId) {
+        ensureClassCapacity(classId);
+        perClassCount[classId]++;
+        taskCount++;
+        return ids == null ? taskCount - 1 : ids.getAndIncrement();
+    }
 
-        idToClassName.put(taskCount, cname);
+    private void ensureClassCapacity(int classId) {
+        if (classId < perClassCount.length)
+            return;
+        final int capacity = Math.max(classId + 1, perClassCount.length * 2);
+        perClassCount = Arrays.copyOf(perClassCount, capacity);
+        perClassForkCalls = Arrays.copyOf(perClassForkCalls, capacity);
+        perClassComputeCalls = Arrays.copyOf(perClassComputeCalls, capacity);
+    }
 
-        return taskCount++;
+    private static String className(int classId) {
+        synchronized (classNames) {
+            return classNames.get(classId);
+        }
     }
 
     /**
      * For {@link InstrumentedTask}
      *
-     * @param event to be recorded
+     * @param kind    of event to be recorded
+     * @param taskId  task the event happened in
+     * @param childId    task the event refers to; for {@link ForkJoinEvent#ENTER} the task's class, see
+     *                   {@link PatternDetector#entry(int, boolean, boolean)}; -1 for {@link ForkJoinEvent#EXIT}
+     * @param childClass class id of the child, only read for {@link ForkJoinEvent#FORK} and {@link ForkJoinEvent#COMPUTE}
      */
-    void log(ForkJoinEvent event) {
-        if (event instanceof ForkJoinEvent.ForkEvent fe) {
+    void log(ForkJoinEvent kind, long taskId, long childId, int childClass) {
+        if (kind == ForkJoinEvent.FORK) {
             forkCalls++;
-            final var cname = idToClassName.get(fe.getChildId());
-            if (perClassForkCalls.containsKey(cname))
-                perClassForkCalls.put(cname, perClassForkCalls.get(cname) + 1);
-            else
-                perClassForkCalls.put(cname, 1L);
+            ensureClassCapacity(childClass);
+            perClassForkCalls[childClass]++;
         }
-        else if (event instanceof ForkJoinEvent.ComputeEvent ce) {
+        else if (kind == ForkJoinEvent.COMPUTE) {
             computeCalls++;
-            final var cname = idToClassName.get(ce.getChildId());
-            if (perClassComputeCalls.containsKey(cname))
-                perClassComputeCalls.put(cname, perClassComputeCalls.get(cname) + 1);
+            ensureClassCapacity(childClass);
+            perClassComputeCalls[childClass]++;
+        }
+
+        final long timestamp = !logicalClock ? System.nanoTime() : clock == null ? ++sequence : clock.incrementAndGet();
+        if (isThreaded()) {
+            // buffers of other threads interleave, so they cannot be streamed yet
+            if (unrecorded.get() > 0 && unrecorded.getAndDecrement() > 0)
+                eventLog.add(kind, taskId, childId, timestamp);
             else
-                perClassComputeCalls.put(cname, 1L);
+                truncated = true;
+        } else {
+            if (trace != null)
+                trace.event(kind, taskId, childId, timestamp);
+            record(kind, taskId, childId, timestamp);
+        }
+    }
+
+    /**
+     * Keeps an event that is in timestamp order: in the log, or in the
+     * streaming computation once there is no graph to be built. Either way
+     * it is checked for anti-patterns.
+     */
+    private void record(ForkJoinEvent kind, long taskId, long childId, long timestamp) {
+        patterns.accept(kind, taskId, childId, timestamp);
+        if (streaming)
+            online.accept(kind, taskId, childId, timestamp);
+        else {
+            eventLog.add(kind, taskId, childId, timestamp);
+            if (eventLog.size() >= eventBudget)
+                switchToStreaming();
+        }
+    }
+
+    /**
+     * The event log is over budget: hand everything recorded so far to the
+     * streaming computation and continue there, without a graph.
+     */
+    private void switchToStreaming() {
+        for (int i = 0; i < eventLog.size(); i++)
+            online.accept(eventLog.kind(i), eventLog.taskId(i), eventLog.childId(i), eventLog.timestamp(i));
+        eventLog.release();
+        streaming = true;
+    }
+
+    /**
+     * For {@link InstrumentedTask}, as a task starts.
+     */
+    void logSize(long taskId, InstrumentedTask<?> task) {
+        if (options.sizeHint() != null)
+            granularity.size(taskId, options.sizeHint().applyAsLong(task));
+    }
+
+    /**
+     * Class of the implicit main task, see {@link #enterMainTask()}.
+     */
+    private static final class Main {
+    }
+
+    /**
+     * For {@link AnalyzedThread}, as a thread is created outside of any task: enters
+     * the implicit main task, which stands for the code being analyzed and so
+     * forks and joins the threads it starts. It exits as the analysis ends.
+     */
+    void enterMainTask() {
+        if (executingTask != -1)
+            return;
+        final int classId = classIdOf(Main.class);
+        mainTask = makeId(classId);
+        log(ForkJoinEvent.ENTER, mainTask, PatternDetector.entry(classId, false, false), -1);
+        executingTask = mainTask;
+    }
+
+    /**
+     * For {@link AnalyzedThread}, as a thread is started. Without worker threads,
+     * a thread runs once joined, as a forked task does; one that is never
+     * joined still runs, as the main task exits. On worker threads, the main
+     * task waits for it before exiting.
+     */
+    void threadStarted(AnalyzedThread thread) {
+        synchronized (session.startedThreads) {
+            session.startedThreads.add(thread);
         }
+    }
 
-        eventLog.add(event);
+    private void exitMainTask() {
+        // threads started by these are added as they run
+        for (int i = 0;; i++) {
+            final AnalyzedThread thread;
+            synchronized (startedThreads) {
+                if (i == startedThreads.size()) {
+                    startedThreads.clear();
+                    break;
+                }
+                thread = startedThreads.get(i);
+            }
+            thread.runUnjoined();
+        }
+        if (mainTask == -1)
+            return;
+        log(ForkJoinEvent.EXIT, mainTask, -1, -1);
+        executingTask = -1;
+        mainTask = -1;
     }
 
     void logPoolInvoke() {
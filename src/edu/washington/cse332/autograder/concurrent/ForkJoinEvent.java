@@ -1,120 +1,59 @@
 package edu.washington.cse332.autograder.concurrent;
 
-import static edu.washington.cse332.autograder.concurrent.ForkJoinEvent.*;
-
 /**
- * A singular event in the course of an execution.
+ * The kind of a singular event in the course of an execution. The events
+ * themselves are stored column-wise in a {@link ForkJoinEventLog}, so that
+ * recording one does not allocate.
  * 
  * @author Albert Du
  */
-sealed abstract class ForkJoinEvent
-        permits ComputeEvent, ComputeFinishedEvent, ForkEvent, JoinEvent, EnterEvent, ExitEvent {
-    private final long timestamp = System.nanoTime();
-    private final long _taskId;
-
-    protected ForkJoinEvent(long taskId) {
-        _taskId = taskId;
-    }
-
-    long getTimestamp() {
-        return timestamp;
-    }
-
-    long getTaskId() {
-        return _taskId;
-    }
-
-    static final class ComputeEvent extends ForkJoinEvent {
-        private final long _childId;
-
-        ComputeEvent(long thisId, long childId) {
-            super(thisId);
-            _childId = childId;
-        }
-
-        long getChildId() {
-            return _childId;
-        }
-
-        @Override
-        public String toString() {
-            return String.format("%d Sync Compute from %d to %d", getTimestamp(), getTaskId(), getChildId());
-        }
-    }
-
-    static final class ComputeFinishedEvent extends ForkJoinEvent {
-        private final long _childId;
-
-        ComputeFinishedEvent(long thisId, long childId) {
-            super(thisId);
-            _childId = childId;
-        }
-
-        long getChildId() {
-            return _childId;
-        }
-
-        @Override
-        public String toString() {
-            return String.format("%d Sync Compute finished from %d to %d", getTimestamp(), getTaskId(), getChildId());
-        }
-    }
-
-    static final class ForkEvent extends ForkJoinEvent {
-        private final long _childId;
-
-        ForkEvent(long thisId, long childId) {
-            super(thisId);
-            _childId = childId;
-        }
-
-        long getChildId() {
-            return _childId;
-        }
-
-        @Override
-        public String toString() {
-            return String.format("%d Forked from %d to %d", getTimestamp(), getTaskId(), getChildId());
-        }
-    }
-
-    static final class JoinEvent extends ForkJoinEvent {
-        private final long _childId;
-
-        JoinEvent(long thisId, long childId) {
-            super(thisId);
-            _childId = childId;
-        }
-
-        long getChildId() {
-            return _childId;
-        }
-
-        @Override
-        public String toString() {
-            return String.format("%d Joined from %d back to %d", getTimestamp(), getChildId(), getTaskId());
-        }
-    }
-
-    static final class EnterEvent extends ForkJoinEvent {
-        EnterEvent(long taskId) {
-            super(taskId);
-        }
-
-        @Override
-        public String toString() {
-            return String.format("%d Entered %d", getTimestamp(), getTaskId());
-        }
-    }
-
-    static final class ExitEvent extends ForkJoinEvent {
-        ExitEvent(long taskId) {
-            super(taskId);
-        }
-
-        @Override
-        public String toString() {
-            return String.format("%d Exited %d", getTimestamp(), getTaskId());
-        }
-    }
-}
\ No newline at end of file
+enum ForkJoinEvent {
+    /**
+     * Task synchronously computes a child.
+     */
+    COMPUTE,
+    /**
+     * A synchronously computed child returned to the task.
+     */
+    COMPUTE_FINISHED,
+    /**
+     * Task forked a child.
+     */
+    FORK,
+    /**
+     * Task joined a forked child.
+     */
+    JOIN,
+    /**
+     * Task started executing. Has no child.
+     */
+    ENTER,
+    /**
+     * Task finished executing. Has no child.
+     */
+    EXIT;
+
+    private static final ForkJoinEvent[] VALUES = values();
+
+    static ForkJoinEvent of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    /**
+     * Whether events of this kind name a child task.
+     */
+    boolean hasChild() {
+        return this != ENTER && this != EXIT;
+    }
+
+    String describe(long timestamp, long taskId, long childId) {
+        return switch (this) {
+            case COMPUTE -> String.format("%d Sync Compute from %d to %d", timestamp, taskId, childId);
+            case COMPUTE_FINISHED -> String.format("%d Sync Compute finished from %d to %d", timestamp, taskId, childId);
+            case FORK -> String.format("%d Forked from %d to %d", timestamp, taskId, childId);
+            case JOIN -> String.format("%d Joined from %d back to %d", timestamp, childId, taskId);
+            case ENTER -> String.format("%d Entered %d", timestamp, taskId);
+            case EXIT -> String.format("%d Exited %d", timestamp, taskId);
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An append-only log of {@link ForkJoinEvent}s, stored as growable primitive
+ * arrays (one per column) so that recording an event never allocates once the
+ * arrays have grown to size.
+ * <p>
+ * Events are appended in timestamp order. A task id of {@code -1} stands for
+ * "outside of any task". {@link ForkJoinEvent#ENTER} events store the task's
+ * class in the child id column, see {@link PatternDetector#entry(int, boolean, boolean)};
+ * other events without a child store {@code -1}.
+ */
+final class ForkJoinEventLog {
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private byte[] kinds;
+    private long[] taskIds;
+    private long[] childIds;
+    private long[] timestamps;
+    private int size;
+
+    ForkJoinEventLog() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private ForkJoinEventLog(int capacity) {
+        kinds = new byte[capacity];
+        taskIds = new long[capacity];
+        childIds = new long[capacity];
+        timestamps = new long[capacity];
+    }
+
+    void add(ForkJoinEvent kind, long taskId, long childId, long timestamp) {
+        if (size == kinds.length)
+            grow();
+        kinds[size] = (byte) kind.ordinal();
+        taskIds[size] = taskId;
+        childIds[size] = childId;
+        timestamps[size] = timestamp;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    ForkJoinEvent kind(int i) {
+        return ForkJoinEvent.of(kinds[i]);
+    }
+
+    long taskId(int i) {
+        return taskIds[i];
+    }
+
+    long childId(int i) {
+        return childIds[i];
+    }
+
+    long timestamp(int i) {
+        return timestamps[i];
+    }
+
+    /**
+     * Largest task id mentioned by any event, as task or child; -1 if empty.
+     */
+    long maxTaskId() {
+        long max = -1;
+        for (int i = 0; i < size; i++)
+            max = Math.max(max, kind(i).hasChild() ? Math.max(taskIds[i], childIds[i]) : taskIds[i]);
+        return max;
+    }
+
+    String describe(int i) {
+        return kind(i).describe(timestamps[i], taskIds[i], childIds[i]);
+    }
+
+    /**
+     * Forgets all events but keeps the allocated capacity for reuse.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Forgets all events and gives the allocated capacity back.
+     */
+    void release() {
+        kinds = new byte[INITIAL_CAPACITY];
+        taskIds = new long[INITIAL_CAPACITY];
+        childIds = new long[INITIAL_CAPACITY];
+        timestamps = new long[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * Moves the events of logs that are each in timestamp order into a single
+     * log in timestamp order, allocated once at the total size. Each log is
+     * {@linkplain #release() released} as soon as all its events are moved.
+     * Events with equal timestamps keep the order of {@code logs}.
+     */
+    static ForkJoinEventLog merge(List<ForkJoinEventLog> logs) {
+        int total = 0;
+        for (var log : logs)
+            total = Math.addExact(total, log.size);
+        final var merged = new ForkJoinEventLog(total);
+        final int[] next = new int[logs.size()];
+        while (true) {
+            int min = -1;
+            for (int j = 0; j < logs.size(); j++) {
+                final var log = logs.get(j);
+                if (next[j] < log.size
+                        && (min < 0 || log.timestamps[next[j]] < logs.get(min).timestamps[next[min]]))
+                    min = j;
+            }
+            if (min < 0)
+                return merged;
+            final var log = logs.get(min);
+            final int i = next[min]++;
+            merged.add(log.kind(i), log.taskIds[i], log.childIds[i], log.timestamps[i]);
+            if (next[min] == log.size) {
+                log.release();
+                next[min] = 0;
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = Math.max(INITIAL_CAPACITY, kinds.length + (kinds.length >> 1));
+        kinds = Arrays.copyOf(kinds, capacity);
+        taskIds = Arrays.copyOf(taskIds, capacity);
+        childIds = Arrays.copyOf(childIds, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+    }
+}
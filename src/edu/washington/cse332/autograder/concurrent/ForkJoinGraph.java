@@ -1,61 +1,149 @@
 package edu.washington.cse332.autograder.concurrent;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Fork Join Graph. Produced as output from {@link ForkJoinAnalyzer}.
+ * <p>
+ * Segments are numbered densely from 0, grouped by task in task id order and
+ * in time order within each task. Segments and edges are stored as primitive
+ * columns, and successors in compressed sparse row form, so that traversals
+ * are plain array scans.
  *
  * @author Albert Du
  */
 public final class ForkJoinGraph {
 
     // #region Fields
-    private final List<ForkJoinSegment> _segments;
-    private final List<ForkJoinEdge> _edges;
-    private final ForkJoinSegment _root;
+    // segment columns, indexed by segment id
+    private final long[] _taskIds;
+    private final int[] _indexInTask;
+    private final long[] _startTimes;
+    private final long[] _endTimes;
+    /** The segments of the task in slot {@code k} (task id {@code k - 1}) are {@code _taskStart[k] .. _taskStart[k + 1] - 1}. */
+    private final int[] _taskStart;
+    // edge columns, in the order the edges were added
+    private final int[] _edgeFrom;
+    private final int[] _edgeTo;
+    private final byte[] _edgeTypes;
+    /** Successors of segment {@code u} are {@code _succ[_succStart[u]] .. _succ[_succStart[u + 1] - 1]}. */
+    private final int[] _succStart;
+    private final int[] _succ;
+    /** Earliest segment, -1 if there are none. */
+    private final int _root;
+    /** Instrumentation time in each segment, subtracted from its duration. */
+    private final long _overhead;
+    private ForkJoinMetrics _metrics;
     // #endregion
 
     // #region Constructor and Factory
-    private ForkJoinGraph(List<ForkJoinSegment> segments, List<ForkJoinEdge> edges, ForkJoinSegment root) {
-        _segments = segments;
-        _edges = edges;
+    private ForkJoinGraph(Builder b, int[] taskStart, long overhead) {
+        final int n = b.segments;
+        _overhead = overhead;
+        _taskIds = Arrays.copyOf(b.taskIds, n);
+        _indexInTask = Arrays.copyOf(b.indexInTask, n);
+        _startTimes = Arrays.copyOf(b.startTimes, n);
+        _endTimes = Arrays.copyOf(b.endTimes, n);
+        _taskStart = taskStart;
+        _edgeFrom = Arrays.copyOf(b.edgeFrom, b.edges);
+        _edgeTo = Arrays.copyOf(b.edgeTo, b.edges);
+        _edgeTypes = Arrays.copyOf(b.edgeTypes, b.edges);
+
+        _succStart = new int[n + 1];
+        for (int e = 0; e < b.edges; e++)
+            _succStart[_edgeFrom[e] + 1]++;
+        for (int u = 0; u < n; u++)
+            _succStart[u + 1] += _succStart[u];
+        final var fill = Arrays.copyOf(_succStart, n);
+        _succ = new int[b.edges];
+        for (int e = 0; e < b.edges; e++)
+            _succ[fill[_edgeFrom[e]]++] = _edgeTo[e];
+
+        int root = -1;
+        for (int u = 0; u < n; u++)
+            if (root < 0 || _startTimes[u] < _startTimes[root])
+                root = u;
         _root = root;
     }
 
-    static ForkJoinGraph create(List<ForkJoinEvent> events) {
+    /**
+     * @param overhead nanoseconds of instrumentation to subtract from every
+     *                 segment's duration, see {@link AnalysisOptions#eventOverhead()}
+     */
+    static ForkJoinGraph create(ForkJoinEventLog log, long overhead) {
         // If there are no events, return an empty graph
-        if (events.size() == 0)
-            return new ForkJoinGraph(Collections.emptyList(), Collections.emptyList(), null);
-
-        // Normalize per task and sort by time.
-        final var perTask = groupByTaskSorted(events);
+        if (log.size() == 0)
+            return new ForkJoinGraph(new Builder(), new int[1], overhead);
 
-        // For each task, compute wait intervals (Compute -> ComputeFinished for same
-        // child)
-        final var waitIntervals = computeWaitIntervals(perTask);
+        // Bucket event indices per task; the log is in time order, so each bucket is too.
+        final var perTask = TaskEvents.group(log);
 
-        // Build active segments only (skip waits & zero-length)
-        final var activeByTask = buildActiveSegments(perTask, waitIntervals);
+        // Build active segments only (skip waits & zero-length): Compute -> ComputeFinished
+        // for the same child is time the task spends waiting
+        final var b = new Builder();
+        final var taskStart = buildActiveSegments(log, perTask, b);
+        if (b.segments == 0)
+            throw new IllegalStateException("No active segments constructed");
 
         // Build edges:
         // - Sequential within each task (active-only)
         // - Fork / Join / Compute / ComputeFinished across tasks, snapped to nearest
         // active segments
-        final var edges = new ArrayList<ForkJoinEdge>();
-        addSequentialEdges(activeByTask, edges);
-        addCausalEdges(events, activeByTask, edges);
+        addSequentialEdges(taskStart, b);
+        addCausalEdges(log, taskStart, b);
 
-        // Pick the earliest active segment as root (must exist)
-        final var root = activeByTask.values().stream()
-                .flatMap(List::stream)
-                .min(Comparator.comparingLong(ForkJoinSegment::getStartTime))
-                .orElseThrow(() -> new IllegalStateException("No active segments constructed"));
+        // The earliest active segment is the root
+        return new ForkJoinGraph(b, taskStart, overhead);
+    }
 
-        // Flatten active segments for fields
-        final var allActive = activeByTask.values().stream().flatMap(Collection::stream).collect(Collectors.toList());
+    /**
+     * Growable segment and edge columns while the graph is being built.
+     */
+    private static final class Builder {
+        long[] taskIds = new long[16];
+        int[] indexInTask = new int[16];
+        long[] startTimes = new long[16];
+        long[] endTimes = new long[16];
+        int segments;
+
+        int[] edgeFrom = new int[16];
+        int[] edgeTo = new int[16];
+        byte[] edgeTypes = new byte[16];
+        int edges;
+
+        void addSegment(long taskId, int index, long startTime, long endTime) {
+            if (segments == taskIds.length) {
+                final int capacity = segments * 2;
+                taskIds = Arrays.copyOf(taskIds, capacity);
+                indexInTask = Arrays.copyOf(indexInTask, capacity);
+                startTimes = Arrays.copyOf(startTimes, capacity);
+                endTimes = Arrays.copyOf(endTimes, capacity);
+            }
+            taskIds[segments] = taskId;
+            indexInTask[segments] = index;
+            startTimes[segments] = startTime;
+            endTimes[segments] = endTime;
+            segments++;
+        }
 
-        return new ForkJoinGraph(allActive, edges, root);
+        void addEdge(int from, int to, ForkJoinEdge type) {
+            if (edges == edgeFrom.length) {
+                final int capacity = edges * 2;
+                edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+                edgeTo = Arrays.copyOf(edgeTo, capacity);
+                edgeTypes = Arrays.copyOf(edgeTypes, capacity);
+            }
+            edgeFrom[edges] = from;
+            edgeTo[edges] = to;
+            edgeTypes[edges] = (byte) type.ordinal();
+            edges++;
+        }
     }
 
     // #endregion
@@ -66,7 +154,7 @@ public final class ForkJoinGraph {
      * @return Structural work.
      */
     public double structuralWork() {
-        return Math.max(1, _segments.size());
+        return metrics().structuralWork();
     }
 
     /**
@@ -74,7 +162,7 @@ public final class ForkJoinGraph {
      * @return Empirical work in nanoseconds.
      */
     public double empiricalWork() {
-        return _segments.stream().map(ForkJoinSegment::getNanoSeconds).reduce(Long::sum).orElse(0L);
+        return metrics().empiricalWork();
     }
 
     /**
@@ -82,22 +170,7 @@ public final class ForkJoinGraph {
      * @return
      */
     public double structuralCriticalPath() {
-        if (_segments.isEmpty())
-            return 1;
-
-        var topo = topoOrder();
-        var succ = successorsMap();
-
-        Map<ForkJoinSegment, Integer> dist = new HashMap<>();
-        int best = 0;
-        for (ForkJoinSegment u : topo) {
-            int du = Math.max(dist.getOrDefault(u, 0), 1); // unit weight
-            for (ForkJoinSegment v : succ.getOrDefault(u, List.of())) {
-                dist.put(v, Math.max(dist.getOrDefault(v, 0), du + 1));
-            }
-            best = Math.max(best, du);
-        }
-        return best > 0 ? best : 1;
+        return metrics().structuralCriticalPath();
     }
 
     /**
@@ -105,24 +178,7 @@ public final class ForkJoinGraph {
      * @return
      */
     public double empiricalCriticalPath() {
-        if (_segments.isEmpty())
-            return 0.0;
-
-        var topo = topoOrder();
-        var succ = successorsMap();
-
-        Map<ForkJoinSegment, Integer> dist = new HashMap<>();
-        int best = 0;
-
-        for (ForkJoinSegment u : topo) {
-            int du = dist.getOrDefault(u, 0);
-            for (ForkJoinSegment v : succ.getOrDefault(u, List.of())) {
-                dist.put(v, Math.max(dist.getOrDefault(v, 0), du + (int) u.getNanoSeconds()));
-            }
-            best = Math.max(best, du + (int) u.getNanoSeconds());
-        }
-
-        return best > 0 ? best : 1;
+        return metrics().empiricalCriticalPath();
     }
 
     /**
@@ -130,7 +186,7 @@ public final class ForkJoinGraph {
      * @return
      */
     public double structuralSpeedup() {
-        return structuralWork() / structuralCriticalPath();
+        return metrics().structuralSpeedup();
     }
 
     /**
@@ -138,7 +194,20 @@ public final class ForkJoinGraph {
      * @return
      */
     public double empiricalSpeedup() {
-        return empiricalWork() / empiricalCriticalPath();
+        return metrics().empiricalSpeedup();
+    }
+
+    /**
+     * All metrics at once. Computed in a single traversal the first time any
+     * metric is asked for.
+     * @return Work, span and final segment count of this graph.
+     */
+    public ForkJoinMetrics metrics() {
+        // the graph never changes; racing threads compute equal, immutable summaries
+        var metrics = _metrics;
+        if (metrics == null)
+            _metrics = metrics = computeMetrics();
+        return metrics;
     }
 
     /**
@@ -146,9 +215,74 @@ public final class ForkJoinGraph {
      * @return 1 if everything is correct and all forked tasks were joined. Something greater than 1 indicates lost parallelism.
      */
     public int finalSegmentCount() {
-        // Number of segments with no outgoing edges
-        var dests = _edges.stream().map(ForkJoinEdge::start).collect(Collectors.toSet());
-        return (int) _segments.stream().filter(s -> !dests.contains(s)).count();
+        return metrics().finalSegmentCount();
+    }
+
+    private ForkJoinMetrics computeMetrics() {
+        final int n = segmentCount();
+        long durations = 0;
+        int finals = 0;
+        for (int u = 0; u < n; u++) {
+            durations += duration(u);
+            // Number of segments with no outgoing edges
+            if (_succStart[u] == _succStart[u + 1])
+                finals++;
+        }
+
+        // Longest paths from the root, by number of segments and by duration, ending at each segment
+        final var distSegments = new long[n];
+        final var distNanos = new long[n];
+        long longestPath = 0;
+        long longestDuration = 0;
+        for (int u : topoOrder()) {
+            final long du = distSegments[u] + 1;
+            final long dn = distNanos[u] + duration(u);
+            for (int j = _succStart[u]; j < _succStart[u + 1]; j++) {
+                final int v = _succ[j];
+                distSegments[v] = Math.max(distSegments[v], du);
+                distNanos[v] = Math.max(distNanos[v], dn);
+            }
+            longestPath = Math.max(longestPath, du);
+            longestDuration = Math.max(longestDuration, dn);
+        }
+        return ForkJoinMetrics.of(n, longestPath, durations, longestDuration, finals, ForkJoinMetrics.exact());
+    }
+
+    /**
+     * Structural schedule: simulates running this graph on 1 to {@code maxProcessors}
+     * processors, each segment taking one unit of time.
+     * @param scheduler how ready segments are assigned to processors
+     * @param maxProcessors largest number of processors to simulate
+     * @return one prediction per number of processors, in increasing order
+     */
+    public List<SchedulePrediction> predictStructuralSchedules(SchedulePrediction.Scheduler scheduler, int maxProcessors) {
+        return new ScheduleSimulator(durations(), _succStart, _succ, false).predict(scheduler, maxProcessors);
+    }
+
+    /**
+     * Empirical schedule: simulates running this graph on 1 to {@code maxProcessors}
+     * processors, each segment taking as long as it took when recorded.
+     * @param scheduler how ready segments are assigned to processors
+     * @param maxProcessors largest number of processors to simulate
+     * @return one prediction per number of processors, in increasing order
+     */
+    public List<SchedulePrediction> predictEmpiricalSchedules(SchedulePrediction.Scheduler scheduler, int maxProcessors) {
+        return new ScheduleSimulator(durations(), _succStart, _succ, true).predict(scheduler, maxProcessors);
+    }
+
+    /**
+     * Structural speedup curves of both schedulers, for HTML test output.
+     * @param maxProcessors largest number of processors to simulate
+     * @return An HTML img tag containing an SVG chart.
+     */
+    public String speedupChartHTML(int maxProcessors) {
+        final var simulator = new ScheduleSimulator(durations(), _succStart, _succ, false);
+        final var svg = SpeedupChart.toSVG(
+                simulator.predict(SchedulePrediction.Scheduler.GREEDY, maxProcessors),
+                simulator.predict(SchedulePrediction.Scheduler.WORK_STEALING, maxProcessors),
+                structuralSpeedup());
+        return "<img src=\"data:image/svg+xml;base64,"
+                + Base64.getEncoder().encodeToString(svg.getBytes(java.nio.charset.StandardCharsets.UTF_8)) + "\" />";
     }
 
     // #endregion
@@ -156,243 +290,577 @@ public final class ForkJoinGraph {
     // #region DOT Graph Output
 
     /**
-     * Convert to DOT format for visualization.
+     * A number of nodes that GraphViz still lays out quickly, for
+     * {@link #toDOT(int)}.
+     */
+    public static final int DEFAULT_NODE_BUDGET = 500;
+
+    /**
+     * Convert to DOT format for visualization, every segment as a node.
      * @return A fancy formatted DOT string.
+     * @see #toDOT(int)
      */
     public String toDOT() {
         return toDOT(true);
     }
 
     /**
-     * Convert to DOT format for visualization.
+     * Convert to DOT format for visualization, every segment as a node.
      * @param fancy Whether to use fancy formatting.
      * @return A DOT string.
      */
     public String toDOT(boolean fancy) {
+        return toDOT(fancy, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Convert to DOT format for visualization, summarizing graphs with more
+     * than {@code nodeBudget} segments, for example {@link #DEFAULT_NODE_BUDGET}.
+     * Smaller graphs come out as with {@link #toDOT()}.
+     * @param nodeBudget Maximum number of nodes to emit.
+     * @return A fancy formatted DOT string.
+     * @see #toDOT(boolean, int, int)
+     */
+    public String toDOT(int nodeBudget) {
+        return toDOT(true, nodeBudget);
+    }
+
+    /**
+     * Convert to DOT format for visualization, summarizing to at most roughly
+     * {@code nodeBudget} nodes.
+     * @param fancy Whether to use fancy formatting.
+     * @param nodeBudget Maximum number of nodes to emit.
+     * @return A DOT string.
+     * @see #toDOT(boolean, int, int)
+     */
+    public String toDOT(boolean fancy, int nodeBudget) {
+        return toDOT(fancy, Integer.MAX_VALUE, nodeBudget);
+    }
+
+    /**
+     * Convert to DOT format for visualization.
+     * <p>
+     * Tasks form a tree through fork and compute edges. Every task deeper than
+     * {@code maxDepth} in that tree, or deep enough that showing it would exceed
+     * {@code nodeBudget} nodes, is collapsed into a single aggregate node for the
+     * subtree it belongs to. Aggregate nodes are annotated with the number of
+     * tasks in the subtree and the subtree's work and span, both structural and
+     * empirical. The output size is bounded by the budget regardless of the
+     * number of tasks, except when the top-level tasks alone exceed it.
+     * @param fancy Whether to use fancy formatting.
+     * @param maxDepth Deepest task depth (root is 0) to show segment by segment.
+     * @param nodeBudget Maximum number of nodes to emit.
+     * @return A DOT string.
+     */
+    public String toDOT(boolean fancy, int maxDepth, int nodeBudget) {
         var sb = new StringBuilder();
-        sb.append("digraph G {\n");
+        try {
+            toDOT(sb, fancy, maxDepth, nodeBudget);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a StringBuilder does not fail
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the DOT format to {@code out} as it is produced, like {@link #toDOT()}.
+     * Pass it as {@code graph::toDOT}, or a summary as
+     * {@code out -> graph.toDOT(out, true, Integer.MAX_VALUE, nodeBudget)}, to
+     * {@link edu.washington.cse332.autograder.GraphViz#renderDOTToHTMLAsync(edu.washington.cse332.autograder.GraphViz.DOTSource)}
+     * to render big graphs without building the source as a String.
+     * @param out Where to write the DOT source.
+     * @throws IOException If writing to {@code out} fails.
+     */
+    public void toDOT(Appendable out) throws IOException {
+        toDOT(out, true, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Write the DOT format to {@code out} as it is produced.
+     * @param out Where to write the DOT source.
+     * @param fancy Whether to use fancy formatting.
+     * @param maxDepth Deepest task depth (root is 0) to show segment by segment.
+     * @param nodeBudget Maximum number of nodes to emit.
+     * @throws IOException If writing to {@code out} fails.
+     * @see #toDOT(boolean, int, int)
+     */
+    public void toDOT(Appendable out, boolean fancy, int maxDepth, int nodeBudget) throws IOException {
+        var summary = new Summary(maxDepth, nodeBudget);
+
+        out.append("digraph G {\n");
 
         if (!fancy)
-            sb.append("  node[fontcolor=\"white\"];\n");
+            out.append("  node[fontcolor=\"white\"];\n");
 
-        for (var seg : _segments) {
-            sb.append("  \"").append(seg).append("\";\n");
+        for (int u = 0; u < segmentCount(); u++) {
+            if (summary.isCollapsed(u))
+                continue;
+            out.append("  \"").append(segmentName(u)).append("\";\n");
         }
+        summary.appendAggregateNodes(out);
+
+        out.append("\n");
+
+        // only edges to or from an aggregate can repeat, so only those are remembered
+        var emitted = new HashSet<Long>();
+        for (int e = 0; e < _edgeTypes.length; e++) {
+            final var type = ForkJoinEdge.of(_edgeTypes[e]);
+            final long from = summary.node(_edgeFrom[e]);
+            final long to = summary.node(_edgeTo[e]);
+            if (from == to)
+                continue;
+            if ((summary.isCollapsed(_edgeFrom[e]) || summary.isCollapsed(_edgeTo[e]))
+                    && !emitted.add(from << 34 | to << 3 | type.ordinal()))
+                continue;
 
-        sb.append("\n");
-
-        for (var e : _edges) {
             final var color = !fancy
                     ? "black"
-                    : switch (e.type()) {
+                    : switch (type) {
                         case SEQUENTIAL -> "black";
                         case FORK -> "green";
                         case JOIN -> "blue";
                         case COMPUTE -> "red";
                         case RETURN -> "orange";
                     };
-            sb.append("  \"").append(e.start()).append("\" -> \"").append(e.end()).append("\" [color=").append(color)
+            out.append("  \"").append(summary.nodeName(_edgeFrom[e])).append("\" -> \"")
+                    .append(summary.nodeName(_edgeTo[e])).append("\" [color=").append(color)
                     .append("];\n");
         }
 
-        sb.append("}");
-        return sb.toString();
+        out.append("}");
+    }
+
+    /**
+     * Write the DOT format to {@code out} in UTF-8, like {@link #toDOT()}, for
+     * example into a file. {@code out} is flushed but not closed.
+     * @param out Where to write the DOT source.
+     * @throws IOException If writing to {@code out} fails.
+     */
+    public void writeDOT(OutputStream out) throws IOException {
+        var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        toDOT(writer);
+        writer.flush();
+    }
+
+    /**
+     * Level-of-detail view of the graph: which tasks are shown segment by segment
+     * and which are folded into an aggregate node for their subtree.
+     */
+    private final class Summary {
+        /** task slot -> slot of the collapsed subtree root it belongs to, -1 if shown. */
+        private final int[] collapsedInto;
+        /** collapsed subtree roots, in task id order */
+        private final List<Integer> groups = new ArrayList<>();
+        /** per subtree root slot: {tasks, segments, nanoseconds, structural span, empirical span} */
+        private final long[][] aggregates;
+
+        Summary(int maxDepth, int nodeBudget) {
+            final int slots = _taskStart.length - 1;
+            collapsedInto = new int[slots];
+            Arrays.fill(collapsedInto, -1);
+            aggregates = new long[slots][];
+            if (segmentCount() <= nodeBudget && maxDepth == Integer.MAX_VALUE)
+                return;
+
+            // The task tree: a task's parent is whoever forked or computed it.
+            final var parent = new int[slots];
+            Arrays.fill(parent, -1);
+            for (int e = 0; e < _edgeTypes.length; e++) {
+                final var type = ForkJoinEdge.of(_edgeTypes[e]);
+                final int child = slotOf(_edgeTo[e]);
+                if ((type == ForkJoinEdge.FORK || type == ForkJoinEdge.COMPUTE) && parent[child] < 0)
+                    parent[child] = slotOf(_edgeFrom[e]);
+            }
+
+            final var depth = new int[slots];
+            Arrays.fill(depth, -1);
+            int maxTaskDepth = 0;
+            for (int k = 0; k < slots; k++)
+                if (segmentsOf(k) > 0)
+                    maxTaskDepth = Math.max(maxTaskDepth, depthOf(k, parent, depth));
+
+            // Pick the deepest level whose tasks, plus one aggregate per subtree below it, fit the budget.
+            var segmentsAtDepth = new long[maxTaskDepth + 2];
+            var tasksAtDepth = new long[maxTaskDepth + 2];
+            for (int k = 0; k < slots; k++) {
+                if (segmentsOf(k) == 0)
+                    continue;
+                segmentsAtDepth[depth[k]] += segmentsOf(k);
+                tasksAtDepth[depth[k]]++;
+            }
+            int shownDepth = -1;
+            long shown = 0;
+            for (int d = 0; d <= Math.min(maxDepth, maxTaskDepth); d++) {
+                shown += segmentsAtDepth[d];
+                if (shown + tasksAtDepth[d + 1] > nodeBudget)
+                    break;
+                shownDepth = d;
+            }
+            if (shownDepth == maxTaskDepth)
+                return;
+
+            // Bucket the tasks by depth once, in task id order within a depth.
+            final var depthStart = new int[maxTaskDepth + 2];
+            for (int d = 0; d <= maxTaskDepth; d++)
+                depthStart[d + 1] = depthStart[d] + (int) tasksAtDepth[d];
+            final var byDepth = new int[depthStart[maxTaskDepth + 1]];
+            final var next = Arrays.copyOf(depthStart, maxTaskDepth + 1);
+            for (int k = 0; k < slots; k++)
+                if (segmentsOf(k) > 0)
+                    byDepth[next[depth[k]]++] = k;
+
+            // Assign every deeper task to its ancestor at shownDepth + 1, shallowest first.
+            for (int d = shownDepth + 1; d <= maxTaskDepth; d++) {
+                for (int i = depthStart[d]; i < depthStart[d + 1]; i++) {
+                    final int k = byDepth[i];
+                    if (d == shownDepth + 1) {
+                        collapsedInto[k] = k;
+                        groups.add(k);
+                        aggregates[k] = new long[5];
+                    } else
+                        collapsedInto[k] = collapsedInto[parent[k]];
+                    final var agg = aggregates[collapsedInto[k]];
+                    agg[0]++;
+                    agg[1] += segmentsOf(k);
+                }
+            }
+
+            // Span of each aggregate: longest path using only edges inside its subtree.
+            final var distSegments = new long[segmentCount()];
+            final var distNanos = new long[segmentCount()];
+            for (int u : topoOrderAll()) {
+                final int group = collapsedInto[slotOf(u)];
+                if (group < 0)
+                    continue;
+                final var agg = aggregates[group];
+                long du = distSegments[u] + 1;
+                long dn = distNanos[u] + duration(u);
+                agg[2] += duration(u);
+                agg[3] = Math.max(agg[3], du);
+                agg[4] = Math.max(agg[4], dn);
+                for (int j = _succStart[u]; j < _succStart[u + 1]; j++) {
+                    final int v = _succ[j];
+                    if (collapsedInto[slotOf(v)] != group)
+                        continue;
+                    distSegments[v] = Math.max(distSegments[v], du);
+                    distNanos[v] = Math.max(distNanos[v], dn);
+                }
+            }
+        }
+
+        private static int depthOf(int task, int[] parent, int[] depth) {
+            // walk up iteratively; task chains can be very deep
+            var chain = new ArrayList<Integer>();
+            var onChain = new HashSet<Integer>();
+            int cur = task;
+            while (cur >= 0 && depth[cur] < 0 && onChain.add(cur)) {
+                chain.add(cur);
+                cur = parent[cur];
+            }
+            int d = cur < 0 || depth[cur] < 0 ? -1 : depth[cur];
+            for (int i = chain.size() - 1; i >= 0; i--)
+                depth[chain.get(i)] = ++d;
+            return depth[task];
+        }
+
+        private int segmentsOf(int slot) {
+            return _taskStart[slot + 1] - _taskStart[slot];
+        }
+
+        boolean isCollapsed(int segment) {
+            return collapsedInto[slotOf(segment)] >= 0;
+        }
+
+        /**
+         * @return the segment itself if shown, otherwise segmentCount() plus its aggregate's slot
+         */
+        long node(int segment) {
+            final int group = collapsedInto[slotOf(segment)];
+            return group < 0 ? segment : (long) segmentCount() + group;
+        }
+
+        String nodeName(int segment) {
+            final int group = collapsedInto[slotOf(segment)];
+            return group < 0 ? segmentName(segment) : "subtree_" + (group - 1);
+        }
+
+        void appendAggregateNodes(Appendable out) throws IOException {
+            for (int group : groups) {
+                final var agg = aggregates[group];
+                out.append("  \"subtree_" + (group - 1) + "\" [shape=box, label=\"task " + (group - 1) + " subtree\\n"
+                        + agg[0] + " tasks, work " + agg[1] + " (" + agg[2] + " ns)\\nspan " + agg[3] + " (" + agg[4]
+                        + " ns)\"];\n");
+            }
+        }
     }
 
     // #endregion
 
     // #region Private Graph Helpers
-    private Map<ForkJoinSegment, List<ForkJoinSegment>> successorsMap() {
-        final var map = new HashMap<ForkJoinSegment, List<ForkJoinSegment>>();
-        for (ForkJoinEdge e : _edges)
-            map.computeIfAbsent(e.start(), k -> new ArrayList<>()).add(e.end());
+    private int segmentCount() {
+        return _startTimes.length;
+    }
 
-        return map;
+    /**
+     * Time the segment spent in student code: its length without the
+     * instrumentation overhead, never negative.
+     */
+    private long duration(int segment) {
+        return Math.max(0, _endTimes[segment] - _startTimes[segment] - _overhead);
     }
 
-    private List<ForkJoinSegment> topoOrder() {
-        // DFS from root over edges
-        final var order = new ArrayList<ForkJoinSegment>();
-        final var seen = new HashSet<ForkJoinSegment>();
-        dfs(_root, seen, order);
-        Collections.reverse(order);
-        return order;
+    private long[] durations() {
+        final var durations = new long[segmentCount()];
+        for (int u = 0; u < durations.length; u++)
+            durations[u] = duration(u);
+        return durations;
     }
 
-    private void dfs(ForkJoinSegment u, Set<ForkJoinSegment> seen, List<ForkJoinSegment> out) {
-        if (!seen.add(u))
-            return;
+    private int slotOf(int segment) {
+        return TaskEvents.slot(_taskIds[segment]);
+    }
 
-        for (var e : _edges) {
-            if (e.start().equals(u))
-                dfs(e.end(), seen, out);
+    private String segmentName(int segment) {
+        return _taskIds[segment] + "_" + _indexInTask[segment];
+    }
+
+    /**
+     * Topological order of every segment, including those not reachable from the root.
+     */
+    private int[] topoOrderAll() {
+        final int n = segmentCount();
+        final var indegree = new int[n];
+        for (int v : _succ)
+            indegree[v]++;
+        final var order = new int[n];
+        int tail = 0;
+        for (int u = 0; u < n; u++)
+            if (indegree[u] == 0)
+                order[tail++] = u;
+        for (int head = 0; head < tail; head++) {
+            final int u = order[head];
+            for (int j = _succStart[u]; j < _succStart[u + 1]; j++)
+                if (--indegree[_succ[j]] == 0)
+                    order[tail++] = _succ[j];
         }
-        out.add(u);
-    }
-
-    private static Map<Long, List<ForkJoinEvent>> groupByTaskSorted(List<ForkJoinEvent> events) {
-        final var perTask = new HashMap<Long, List<ForkJoinEvent>>();
-        for (var e : events)
-            perTask.computeIfAbsent(e.getTaskId(), k -> new ArrayList<>()).add(e);
-        for (var list : perTask.values())
-            list.sort(Comparator.comparingLong(ForkJoinEvent::getTimestamp));
-        return perTask;
-    }
-
-    private static Map<Long, List<long[]>> computeWaitIntervals(Map<Long, List<ForkJoinEvent>> perTask) {
-        // For each task, track [start,end) intervals where the task is waiting on a
-        // specific child
-        var waits = new HashMap<Long, List<long[]>>();
-        for (var entry : perTask.entrySet()) {
-            long taskId = entry.getKey();
-            var evts = entry.getValue();
-            // childId -> startTime stack (allow nested/spurious patterns defensively)
-            Map<Long, Deque<Long>> open = new HashMap<>();
-            List<long[]> intervals = new ArrayList<>();
-
-            for (ForkJoinEvent e : evts) {
-                if (e instanceof ForkJoinEvent.ComputeEvent ce) {
-                    open.computeIfAbsent(ce.getChildId(), k -> new ArrayDeque<>()).push(e.getTimestamp());
-                } else if (e instanceof ForkJoinEvent.ComputeFinishedEvent cf) {
-                    var stk = open.get(cf.getChildId());
-                    if (stk != null && !stk.isEmpty()) {
-                        long start = stk.pop();
-                        long end = e.getTimestamp();
-                        if (end > start)
-                            intervals.add(new long[] { start, end });
-                    }
+        return tail == n ? order : Arrays.copyOf(order, tail);
+    }
+
+    /**
+     * Topological order of the segments reachable from the root. Iterative, so
+     * that deep task chains cannot overflow the stack.
+     */
+    private int[] topoOrder() {
+        if (_root < 0)
+            return new int[0];
+
+        // in-degrees within the part of the graph reachable from the root
+        final int n = segmentCount();
+        final var indegree = new int[n];
+        final var reached = new boolean[n];
+        final var stack = new int[n];
+        int top = 0, reachable = 1;
+        reached[_root] = true;
+        stack[top++] = _root;
+        while (top > 0) {
+            final int u = stack[--top];
+            for (int j = _succStart[u]; j < _succStart[u + 1]; j++) {
+                final int v = _succ[j];
+                indegree[v]++;
+                if (!reached[v]) {
+                    reached[v] = true;
+                    stack[top++] = v;
+                    reachable++;
                 }
             }
-            intervals.sort(Comparator.comparingLong(a -> a[0]));
-            waits.put(taskId, intervals);
         }
-        return waits;
-    }
-
-    private static boolean withinAny(long t0, long t1, List<long[]> intervals) {
-        if (intervals == null || intervals.isEmpty())
-            return false;
-        // intervals are non-overlapping, sorted by start; the segment [t0,t1) is
-        // between adjacent task events
-        int lo = 0, hi = intervals.size() - 1, idx = -1;
-        while (lo <= hi) {
-            int mid = (lo + hi) >>> 1;
-            long[] it = intervals.get(mid);
-            if (it[0] <= t0) {
-                idx = mid;
-                lo = mid + 1;
-            } else
-                hi = mid - 1;
+
+        final var order = new int[reachable];
+        int tail = 0;
+        order[tail++] = _root;
+        for (int head = 0; head < tail; head++) {
+            final int u = order[head];
+            for (int j = _succStart[u]; j < _succStart[u + 1]; j++) {
+                final int v = _succ[j];
+                if (--indegree[v] == 0 && v != _root)
+                    order[tail++] = v;
+            }
         }
-        int i = Math.max(0, idx);
-        for (; i < intervals.size(); i++) {
-            long[] it = intervals.get(i);
-            if (it[0] >= t1)
-                break;
-            // overlap if it.start < t1 && it.end > t0
-            if (it[1] > t0)
-                return true;
+        return tail == reachable ? order : Arrays.copyOf(order, tail);
+    }
+
+    /**
+     * Event indices of a {@link ForkJoinEventLog} grouped by task, in compressed
+     * form: the events of the task in slot {@code k} are
+     * {@code events[start[k]] .. events[start[k + 1] - 1]}. Slot {@code k} holds
+     * task id {@code k - 1}, so that "outside of any task" (-1) has a slot too.
+     */
+    private record TaskEvents(int[] start, int[] events) {
+        static TaskEvents group(ForkJoinEventLog log) {
+            final int slots = (int) log.maxTaskId() + 2;
+            final var start = new int[slots + 1];
+            for (int i = 0; i < log.size(); i++)
+                start[slot(log.taskId(i)) + 1]++;
+            for (int k = 0; k < slots; k++)
+                start[k + 1] += start[k];
+
+            final var fill = Arrays.copyOf(start, slots);
+            final var events = new int[log.size()];
+            for (int i = 0; i < log.size(); i++)
+                events[fill[slot(log.taskId(i))]++] = i;
+            return new TaskEvents(start, events);
+        }
+
+        int slots() {
+            return start.length - 1;
+        }
+
+        static int slot(long taskId) {
+            return (int) taskId + 1;
         }
-        return false;
     }
 
-    private static Map<Long, List<ForkJoinSegment>> buildActiveSegments(Map<Long, List<ForkJoinEvent>> perTask,
-            Map<Long, List<long[]>> waitIntervals) {
-        Map<Long, List<ForkJoinSegment>> active = new HashMap<>();
-        for (var entry : perTask.entrySet()) {
-            long taskId = entry.getKey();
-            var evts = entry.getValue();
-            var waits = waitIntervals.get(taskId);
+    /**
+     * Adds the active segments of every task to {@code b}, task by task, in one
+     * sweep over each task's events.
+     * <p>
+     * A segment lies between two consecutive events of its task. It is skipped
+     * if it is empty, or if the task is waiting inside a Compute ->
+     * ComputeFinished pair for the same child, which is marked by a
+     * difference array over the task's event positions.
+     *
+     * @return the segment range of each task slot, as {@link #_taskStart}
+     */
+    private static int[] buildActiveSegments(ForkJoinEventLog log, TaskEvents perTask, Builder b) {
+        final var taskStart = new int[perTask.slots() + 1];
+        final var waiting = new int[log.size() + 1];
+        // childId -> positions of open computes (allow nested/spurious patterns defensively)
+        final Map<Long, Deque<Integer>> open = new HashMap<>();
+        for (int k = 0; k < perTask.slots(); k++) {
+            final long taskId = k - 1;
+            final int from = perTask.start()[k], to = perTask.start()[k + 1];
+
+            for (int j = from; j < to; j++) {
+                final int e = perTask.events()[j];
+                if (log.kind(e) == ForkJoinEvent.COMPUTE) {
+                    open.computeIfAbsent(log.childId(e), c -> new ArrayDeque<>()).push(j);
+                } else if (log.kind(e) == ForkJoinEvent.COMPUTE_FINISHED) {
+                    var stk = open.get(log.childId(e));
+                    if (stk != null && !stk.isEmpty()) {
+                        // the task waits from the Compute up to this event
+                        waiting[stk.pop()]++;
+                        waiting[j]--;
+                    }
+                }
+            }
+            open.clear();
 
-            var segs = new ArrayList<ForkJoinSegment>();
-            for (int i = 0; i + 1 < evts.size(); i++) {
-                ForkJoinEvent a = evts.get(i), b = evts.get(i + 1);
-                long t0 = a.getTimestamp(), t1 = b.getTimestamp();
+            taskStart[k] = b.segments;
+            int depth = 0;
+            for (int j = from; j + 1 < to; j++) {
+                depth += waiting[j];
+                long t0 = log.timestamp(perTask.events()[j]), t1 = log.timestamp(perTask.events()[j + 1]);
                 if (t1 <= t0)
                     continue; // zero/negative -> ignore
-                if (withinAny(t0, t1, waits))
+                if (depth > 0)
                     continue; // skip wait time
-                segs.add(new ForkJoinSegment(a, b, segs.size()));
+                b.addSegment(taskId, b.segments - taskStart[k], t0, t1);
             }
-            if (!segs.isEmpty())
-                active.put(taskId, segs);
         }
-        return active;
+        taskStart[perTask.slots()] = b.segments;
+        return taskStart;
     }
 
-    private static void addSequentialEdges(Map<Long, List<ForkJoinSegment>> activeByTask, List<ForkJoinEdge> edges) {
-        for (var entry : activeByTask.entrySet()) {
-            var segs = entry.getValue();
-            for (int i = 0; i + 1 < segs.size(); i++) {
-                edges.add(new ForkJoinEdge(segs.get(i), segs.get(i + 1), ForkJoinEdge.Type.SEQUENTIAL));
+    private static void addSequentialEdges(int[] taskStart, Builder b) {
+        for (int k = 0; k + 1 < taskStart.length; k++) {
+            for (int u = taskStart[k]; u + 1 < taskStart[k + 1]; u++) {
+                b.addEdge(u, u + 1, ForkJoinEdge.SEQUENTIAL);
             }
         }
     }
 
-    private static void addCausalEdges(List<ForkJoinEvent> events,
-            Map<Long, List<ForkJoinSegment>> activeByTask,
-            List<ForkJoinEdge> edges) {
-        for (var e : events) {
-            if (e instanceof ForkJoinEvent.ForkEvent fe) {
-                var p = lastActiveEndingAtOrBefore(activeByTask.get(fe.getTaskId()), fe.getTimestamp());
-                var c = firstActive(activeByTask.get(fe.getChildId()));
-                if (p != null && c != null)
-                    edges.add(new ForkJoinEdge(p, c, ForkJoinEdge.Type.FORK));
-
-            } else if (e instanceof ForkJoinEvent.JoinEvent je) {
-                var cLast = lastActive(activeByTask.get(je.getChildId()));
-                var pNext = firstActiveStartingAtOrAfter(activeByTask.get(je.getTaskId()), je.getTimestamp());
-                if (cLast != null && pNext != null)
-                    edges.add(new ForkJoinEdge(cLast, pNext, ForkJoinEdge.Type.JOIN));
-
-            } else if (e instanceof ForkJoinEvent.ComputeEvent ce) {
-                var p = lastActiveEndingAtOrBefore(activeByTask.get(ce.getTaskId()), ce.getTimestamp());
-                var cFirst = firstActive(activeByTask.get(ce.getChildId()));
-                if (p != null && cFirst != null)
-                    edges.add(new ForkJoinEdge(p, cFirst, ForkJoinEdge.Type.COMPUTE));
-
-            } else if (e instanceof ForkJoinEvent.ComputeFinishedEvent cfe) {
-                var cLast = lastActive(activeByTask.get(cfe.getChildId()));
-                var pNext = firstActiveStartingAtOrAfter(activeByTask.get(cfe.getTaskId()), cfe.getTimestamp());
-                if (cLast != null && pNext != null)
-                    edges.add(new ForkJoinEdge(cLast, pNext, ForkJoinEdge.Type.RETURN));
+    private static void addCausalEdges(ForkJoinEventLog log, int[] taskStart, Builder b) {
+        for (int e = 0; e < log.size(); e++) {
+            final long taskId = log.taskId(e), childId = log.childId(e), ts = log.timestamp(e);
+            switch (log.kind(e)) {
+                case FORK -> {
+                    var p = lastActiveEndingAtOrBefore(b, taskStart, taskId, ts);
+                    var c = firstActive(taskStart, childId);
+                    if (p >= 0 && c >= 0)
+                        b.addEdge(p, c, ForkJoinEdge.FORK);
+                }
+                case JOIN -> {
+                    var cLast = lastActive(taskStart, childId);
+                    var pNext = firstActiveStartingAtOrAfter(b, taskStart, taskId, ts);
+                    if (cLast >= 0 && pNext >= 0)
+                        b.addEdge(cLast, pNext, ForkJoinEdge.JOIN);
+                }
+                case COMPUTE -> {
+                    var p = lastActiveEndingAtOrBefore(b, taskStart, taskId, ts);
+                    var cFirst = firstActive(taskStart, childId);
+                    if (p >= 0 && cFirst >= 0)
+                        b.addEdge(p, cFirst, ForkJoinEdge.COMPUTE);
+                }
+                case COMPUTE_FINISHED -> {
+                    var cLast = lastActive(taskStart, childId);
+                    var pNext = firstActiveStartingAtOrAfter(b, taskStart, taskId, ts);
+                    if (cLast >= 0 && pNext >= 0)
+                        b.addEdge(cLast, pNext, ForkJoinEdge.RETURN);
+                }
+                case ENTER, EXIT -> {
+                    // task boundaries only delimit segments
+                }
             }
         }
     }
 
-    private static ForkJoinSegment firstActive(List<ForkJoinSegment> segs) {
-        if (segs == null || segs.isEmpty())
-            return null;
-        return segs.getFirst();
+    private static int firstActive(int[] taskStart, long taskId) {
+        final int k = TaskEvents.slot(taskId);
+        if (k + 1 >= taskStart.length || taskStart[k] == taskStart[k + 1])
+            return -1;
+        return taskStart[k];
     }
 
-    private static ForkJoinSegment lastActive(List<ForkJoinSegment> segs) {
-        if (segs == null || segs.isEmpty())
-            return null;
-        return segs.getLast();
+    private static int lastActive(int[] taskStart, long taskId) {
+        final int k = TaskEvents.slot(taskId);
+        if (k + 1 >= taskStart.length || taskStart[k] == taskStart[k + 1])
+            return -1;
+        return taskStart[k + 1] - 1;
     }
 
-    private static ForkJoinSegment lastActiveEndingAtOrBefore(List<ForkJoinSegment> segs, long ts) {
-        if (segs == null)
-            return null;
-        ForkJoinSegment cand = null;
-        for (var s : segs) {
-            if (s.getEndTime() <= ts)
-                cand = s;
+    /**
+     * Binary search in the task's segments, whose start and end times both increase.
+     */
+    private static int lastActiveEndingAtOrBefore(Builder b, int[] taskStart, long taskId, long ts) {
+        final int k = TaskEvents.slot(taskId);
+        if (k + 1 >= taskStart.length)
+            return -1;
+        int lo = taskStart[k], hi = taskStart[k + 1];
+        // invariant: segments before lo end at or before ts, those from hi end after it
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (b.endTimes[mid] <= ts)
+                lo = mid + 1;
             else
-                break;
+                hi = mid;
         }
-        return cand;
+        return lo > taskStart[k] ? lo - 1 : -1;
     }
 
-    private static ForkJoinSegment firstActiveStartingAtOrAfter(List<ForkJoinSegment> segs, long ts) {
-        if (segs == null)
-            return null;
-        for (var s : segs) {
-            if (s.getStartTime() >= ts)
-                return s;
+    private static int firstActiveStartingAtOrAfter(Builder b, int[] taskStart, long taskId, long ts) {
+        final int k = TaskEvents.slot(taskId);
+        if (k + 1 >= taskStart.length)
+            return -1;
+        int lo = taskStart[k], hi = taskStart[k + 1];
+        // invariant: segments before lo start before ts, those from hi start at or after it
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (b.startTimes[mid] < ts)
+                lo = mid + 1;
+            else
+                hi = mid;
         }
-        return null;
+        return lo < taskStart[k + 1] ? lo : -1;
     }
     // #endregion
 }
@@ -0,0 +1,85 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Work and span of an analyzed execution, as reported by {@link ForkJoinGraph}
+ * or computed while streaming.
+ *
+ * @param structuralWork         number of segments
+ * @param structuralCriticalPath longest path from the root by number of segments
+ * @param empiricalWork          sum of segment durations
+ * @param empiricalCriticalPath  longest path from the root by segment durations
+ * @param finalSegmentCount      number of segments with no outgoing edges
+ * @param estimated              metrics that are estimates rather than exact, because the
+ *                               analyzer ran out of its memory budget
+ */
+public record ForkJoinMetrics(double structuralWork, double structuralCriticalPath, double empiricalWork,
+        double empiricalCriticalPath, int finalSegmentCount, Set<Metric> estimated) {
+
+    public enum Metric {
+        STRUCTURAL_WORK,
+        STRUCTURAL_CRITICAL_PATH,
+        EMPIRICAL_WORK,
+        EMPIRICAL_CRITICAL_PATH,
+        FINAL_SEGMENT_COUNT
+    }
+
+    public ForkJoinMetrics {
+        estimated = Set.copyOf(estimated);
+    }
+
+    /**
+     * @return these metrics, with {@code metrics} marked as estimated as well
+     */
+    ForkJoinMetrics withEstimated(Set<Metric> metrics) {
+        final var all = exact();
+        all.addAll(estimated);
+        all.addAll(metrics);
+        return new ForkJoinMetrics(structuralWork, structuralCriticalPath, empiricalWork, empiricalCriticalPath,
+                finalSegmentCount, all);
+    }
+
+    /**
+     * @param metric to check
+     * @return whether the given metric is exact
+     */
+    public boolean isExact(Metric metric) {
+        return !estimated.contains(metric);
+    }
+
+    /**
+     * Structural speedup: structural work / structural critical path.
+     * @return
+     */
+    public double structuralSpeedup() {
+        return structuralWork / structuralCriticalPath;
+    }
+
+    /**
+     * Empirical speedup: empirical work / empirical critical path.
+     * @return
+     */
+    public double empiricalSpeedup() {
+        return empiricalWork / empiricalCriticalPath;
+    }
+
+    /**
+     * Applies the conventions of {@link ForkJoinGraph} for empty graphs and empty paths.
+     */
+    static ForkJoinMetrics of(long segments, long longestPath, long durations, long longestDuration,
+            int finalSegmentCount, Set<Metric> estimated) {
+        return new ForkJoinMetrics(
+                Math.max(1, segments),
+                segments == 0 || longestPath <= 0 ? 1 : longestPath,
+                durations,
+                segments == 0 ? 0.0 : longestDuration > 0 ? longestDuration : 1,
+                finalSegmentCount,
+                estimated);
+    }
+
+    static Set<Metric> exact() {
+        return EnumSet.noneOf(Metric.class);
+    }
+}
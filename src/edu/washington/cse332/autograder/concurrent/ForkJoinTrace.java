@@ -0,0 +1,311 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary trace of a recorded execution, see
+ * {@link AnalysisOptions#withTrace(java.nio.file.Path)}.
+ * <p>
+ * Layout: the magic number, a version byte and the event overhead the run
+ * subtracted (see {@link AnalysisOptions#eventOverhead()}), then one record
+ * per event, then an end marker and the task counters. An event record is its
+ * {@link ForkJoinEvent} ordinal in one byte followed by the task id, the child
+ * id (only for kinds that have one) and the timestamp, each as the
+ * zigzag-encoded varint of its difference to the same field of the previous
+ * record. Ids and timestamps mostly grow by small steps, so a typical event
+ * takes 4 to 6 bytes. An {@link ForkJoinEvent#ENTER} record also has the
+ * task's class, see {@link PatternDetector#entry(int, boolean, boolean)}, as a plain
+ * varint after the task id. Counters are varints; class names are
+ * length-prefixed UTF-8.
+ * <p>
+ * A trace whose end marker is missing, because the run failed or the file
+ * was cut off, is rejected when read.
+ */
+final class ForkJoinTrace implements Closeable {
+    private static final int MAGIC = 0x464A5452; // "FJTR"
+    private static final int VERSION = 4;
+    private static final int END = 0xFF;
+    /** Room for the largest event record: kind and three 10-byte varints. */
+    private static final int MAX_RECORD = 1 + 3 * 10;
+    /** Reads map at most this much of the file at once. */
+    private static final long WINDOW = 1L << 30;
+
+    /**
+     * Everything a {@link ParallelismResult} needs besides the events.
+     * The per-class maps are keyed by short class name; {@code classNames}
+     * holds the short names of the class ids in the events.
+     */
+    record Counters(long taskCount, long forkCalls, long computeCalls, long poolInvokes, long elapsedNanos,
+            boolean truncated, Map<String, Long> perTaskCount, Map<String, Long> perTaskForks,
+            Map<String, Long> perTaskComputes, List<String> classNames) {
+    }
+
+    /**
+     * Receives the events of a trace in order.
+     */
+    @FunctionalInterface
+    interface Sink {
+        void accept(ForkJoinEvent kind, long taskId, long childId, long timestamp) throws IOException;
+    }
+
+    // #region Writing
+    private final OutputStream out;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position;
+    private long lastTaskId, lastChildId, lastTimestamp;
+    /** First write failure; writing stops there and {@link #finish(Counters)} reports it. */
+    private IOException failure;
+
+    /**
+     * Creates or overwrites the trace file and writes its header.
+     *
+     * @throws IOException if the file cannot be created
+     */
+    ForkJoinTrace(Path path, long eventOverhead) throws IOException {
+        out = Files.newOutputStream(path);
+        writeInt(MAGIC);
+        buffer[position++] = VERSION;
+        writeVarLong(eventOverhead);
+    }
+
+    /**
+     * Appends an event. Never throws, so that recording can go on; a failure
+     * is reported by {@link #finish(Counters)}.
+     */
+    void event(ForkJoinEvent kind, long taskId, long childId, long timestamp) {
+        if (failure != null)
+            return;
+        if (position + MAX_RECORD > buffer.length && !drain())
+            return;
+        buffer[position++] = (byte) kind.ordinal();
+        writeSigned(taskId - lastTaskId);
+        lastTaskId = taskId;
+        if (kind == ForkJoinEvent.ENTER)
+            writeVarLong(childId);
+        if (kind.hasChild()) {
+            writeSigned(childId - lastChildId);
+            lastChildId = childId;
+        }
+        writeSigned(timestamp - lastTimestamp);
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * Appends the end marker and the counters, and closes the file.
+     *
+     * @throws IOException if any write since the file was created failed
+     */
+    void finish(Counters counters) throws IOException {
+        try {
+            if (failure != null || !drain())
+                throw failure;
+            buffer[position++] = (byte) END;
+            writeVarLong(counters.taskCount());
+            writeVarLong(counters.forkCalls());
+            writeVarLong(counters.computeCalls());
+            writeVarLong(counters.poolInvokes());
+            writeVarLong(counters.elapsedNanos());
+            buffer[position++] = (byte) (counters.truncated() ? 1 : 0);
+            writeVarLong(counters.perTaskCount().size());
+            for (var entry : counters.perTaskCount().entrySet()) {
+                writeString(entry.getKey());
+                writeVarLong(entry.getValue());
+                writeVarLong(counters.perTaskForks().getOrDefault(entry.getKey(), 0L));
+                writeVarLong(counters.perTaskComputes().getOrDefault(entry.getKey(), 0L));
+            }
+            writeVarLong(counters.classNames().size());
+            for (var name : counters.classNames())
+                writeString(name);
+            out.write(buffer, 0, position);
+            position = 0;
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Closes the file as it is. Without {@link #finish(Counters)} the trace
+     * cannot be read back.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private boolean drain() {
+        try {
+            out.write(buffer, 0, position);
+            position = 0;
+            return true;
+        } catch (IOException e) {
+            failure = e;
+            return false;
+        }
+    }
+
+    /**
+     * Writes out the buffer, then the string, which may be longer than the buffer.
+     */
+    private void writeString(String value) throws IOException {
+        final var bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        out.write(buffer, 0, position);
+        out.write(bytes);
+        position = 0;
+    }
+
+    private void writeInt(int value) {
+        for (int shift = 24; shift >= 0; shift -= 8)
+            buffer[position++] = (byte) (value >>> shift);
+    }
+
+    private void writeSigned(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+    // #endregion
+
+    // #region Reading
+    /**
+     * Memory-maps a trace and feeds its events to {@code sink} in order.
+     *
+     * @return the counters stored after the events
+     * @throws IOException if the file cannot be read or is not a complete trace
+     */
+    static Counters read(Path path, Sink sink) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final var in = new Input(channel);
+            readHeader(path, in);
+
+            long taskId = 0, childId = 0, timestamp = 0;
+            for (int kind; (kind = in.readByte()) != END;) {
+                if (kind >= ForkJoinEvent.values().length)
+                    throw new IOException(path + " is corrupt: unknown event kind " + kind);
+                final var event = ForkJoinEvent.of(kind);
+                taskId += in.readSigned();
+                final long entry = event == ForkJoinEvent.ENTER ? in.readVarLong() : -1;
+                if (event.hasChild())
+                    childId += in.readSigned();
+                timestamp += in.readSigned();
+                sink.accept(event, taskId, event.hasChild() ? childId : entry, timestamp);
+            }
+
+            final long taskCount = in.readVarLong(), forkCalls = in.readVarLong(), computeCalls = in.readVarLong(),
+                    poolInvokes = in.readVarLong(), elapsedNanos = in.readVarLong();
+            final boolean truncated = in.readByte() != 0;
+            final var perTaskCount = new HashMap<String, Long>();
+            final var perTaskForks = new HashMap<String, Long>();
+            final var perTaskComputes = new HashMap<String, Long>();
+            for (long classes = in.readVarLong(); classes > 0; classes--) {
+                final var cname = in.readString();
+                perTaskCount.put(cname, in.readVarLong());
+                perTaskForks.put(cname, in.readVarLong());
+                perTaskComputes.put(cname, in.readVarLong());
+            }
+            final var classNames = new ArrayList<String>();
+            for (long classes = in.readVarLong(); classes > 0; classes--)
+                classNames.add(in.readString());
+            return new Counters(taskCount, forkCalls, computeCalls, poolInvokes, elapsedNanos, truncated,
+                    perTaskCount, perTaskForks, perTaskComputes, classNames);
+        }
+    }
+
+    /**
+     * @return the event overhead the recording run subtracted from segment durations
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    static long eventOverhead(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readHeader(path, new Input(channel));
+        }
+    }
+
+    /**
+     * @return the event overhead
+     */
+    private static long readHeader(Path path, Input in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException(path + " is not a fork join trace");
+        final int version = in.readByte();
+        if (version != VERSION)
+            throw new IOException(path + " has unsupported trace version " + version);
+        return in.readVarLong();
+    }
+
+    /**
+     * Sequential reads over a file mapped one window at a time, so that traces
+     * over 2 GB can be read as well.
+     */
+    private static final class Input {
+        private final FileChannel channel;
+        private final long size;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        Input(FileChannel channel) throws IOException {
+            this.channel = channel;
+            size = channel.size();
+            window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW));
+        }
+
+        int readByte() throws IOException {
+            if (!window.hasRemaining()) {
+                windowStart += window.limit();
+                if (windowStart >= size)
+                    throw new IOException("Trace ends unexpectedly; was the run cut short?");
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(size - windowStart, WINDOW));
+            }
+            return window.get() & 0xFF;
+        }
+
+        int readInt() throws IOException {
+            int value = 0;
+            for (int i = 0; i < 4; i++)
+                value = value << 8 | readByte();
+            return value;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IOException("Trace is corrupt: varint too long");
+        }
+
+        String readString() throws IOException {
+            final var bytes = new byte[(int) readVarLong()];
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = (byte) readByte();
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        long readSigned() throws IOException {
+            final long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+    // #endregion
+}
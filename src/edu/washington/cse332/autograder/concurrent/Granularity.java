@@ -0,0 +1,26 @@
+package edu.washington.cse332.autograder.concurrent;
+
+/**
+ * How finely the tasks of one class split their work, from their leaves: the
+ * tasks that neither fork nor compute another task, and so do the sequential
+ * work below the cutoff. See {@link ParallelismResult#granularity()}.
+ * <p>
+ * Too small a cutoff shows as most work in leaves below the
+ * {@link AnalysisOptions#overheadThreshold()}, where creating and scheduling a
+ * task costs about as much as what it does; too large a cutoff shows as few
+ * leaves, and a low {@link ForkJoinMetrics#empiricalSpeedup()}.
+ *
+ * @param leafCount          number of leaf tasks
+ * @param leafWork           work of each leaf, in the unit of
+ *                           {@link ForkJoinMetrics#empiricalWork()}
+ * @param leafSize           {@link AnalysisOptions#sizeHint()} of each leaf;
+ *                           empty without a size hint
+ * @param cutoff             inferred sequential cutoff: the largest size hint
+ *                           of any leaf, or -1 without a size hint
+ * @param workBelowThreshold share of the run's whole empirical work done in
+ *                           leaves of this class whose work was below the
+ *                           overhead threshold, between 0 and 1
+ */
+public record Granularity(long leafCount, Histogram leafWork, Histogram leafSize, long cutoff,
+        double workBelowThreshold) {
+}
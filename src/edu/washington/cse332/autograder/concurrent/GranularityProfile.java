@@ -0,0 +1,113 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the leaf tasks {@link PatternDetector} finds into the per-class
+ * {@link Granularity} of a run, in constant memory per class. Size hints are
+ * kept per task id until the task's leaf is counted; without a size hint
+ * nothing is kept per task.
+ */
+final class GranularityProfile {
+    private static final int BUCKETS = 65;
+
+    private static final class Leaves {
+        long count;
+        final long[] work = new long[BUCKETS];
+        final long[] size = new long[BUCKETS];
+        long largestSize = -1;
+        long workBelowThreshold;
+    }
+
+    /** By class id. */
+    private final Map<Integer, Leaves> perClass = new HashMap<>();
+    private long threshold;
+    /** Size hint of each task, by task id; -1 where unknown. */
+    private long[] sizes = new long[0];
+    /** Entries of {@link #sizes} that may have been set since the last reset. */
+    private int sizesUsed;
+
+    void reset(long threshold) {
+        this.threshold = threshold;
+        perClass.clear();
+        Arrays.fill(sizes, 0, sizesUsed, -1);
+        sizesUsed = 0;
+    }
+
+    /**
+     * Remembers a task's size hint.
+     */
+    void size(long taskId, long size) {
+        if (taskId < 0 || taskId >= Integer.MAX_VALUE)
+            return;
+        if (taskId >= sizes.length) {
+            final int old = sizes.length;
+            sizes = Arrays.copyOf(sizes, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(taskId + 1, old * 2L)));
+            Arrays.fill(sizes, old, sizes.length, -1);
+        }
+        sizes[(int) taskId] = size;
+        sizesUsed = Math.max(sizesUsed, (int) taskId + 1);
+    }
+
+    /**
+     * Adds the size hints another analyzer remembered, see
+     * {@link ForkJoinAnalyzer#analyze(Runnable, AnalysisOptions)} with parallelism.
+     */
+    void addSizes(GranularityProfile other) {
+        for (int taskId = 0; taskId < other.sizesUsed; taskId++)
+            if (other.sizes[taskId] >= 0)
+                size(taskId, other.sizes[taskId]);
+    }
+
+    /**
+     * Counts a task that neither forked nor computed another.
+     *
+     * @param work its work, with instrumentation overhead subtracted
+     */
+    void leaf(int classId, long taskId, long work) {
+        final var leaves = perClass.computeIfAbsent(classId, k -> new Leaves());
+        leaves.count++;
+        leaves.work[Histogram.bucketOf(work)]++;
+        if (work < threshold)
+            leaves.workBelowThreshold += work;
+        final long size = taskId >= 0 && taskId < sizesUsed ? sizes[(int) taskId] : -1;
+        if (size >= 0) {
+            leaves.size[Histogram.bucketOf(size)]++;
+            leaves.largestSize = Math.max(leaves.largestSize, size);
+        }
+    }
+
+    /**
+     * @param classNames short class names, indexed by class id
+     * @param totalWork  empirical work of the whole run
+     * @return the granularity of every class that had leaves, by short name
+     */
+    Map<String, Granularity> granularity(List<String> classNames, double totalWork) {
+        final var byName = new HashMap<String, Leaves>();
+        for (var entry : perClass.entrySet()) {
+            final int classId = entry.getKey();
+            final var name = classId >= 0 && classId < classNames.size() ? classNames.get(classId) : "?";
+            // distinct classes may share a short name
+            final var leaves = entry.getValue();
+            byName.merge(name, leaves, (a, b) -> {
+                final var sum = new Leaves();
+                sum.count = a.count + b.count;
+                for (int i = 0; i < BUCKETS; i++) {
+                    sum.work[i] = a.work[i] + b.work[i];
+                    sum.size[i] = a.size[i] + b.size[i];
+                }
+                sum.largestSize = Math.max(a.largestSize, b.largestSize);
+                sum.workBelowThreshold = a.workBelowThreshold + b.workBelowThreshold;
+                return sum;
+            });
+        }
+        final var result = new HashMap<String, Granularity>();
+        byName.forEach((name, leaves) -> result.put(name, new Granularity(leaves.count, Histogram.of(leaves.work),
+                Histogram.of(leaves.size), leaves.largestSize,
+                totalWork > 0 ? leaves.workBelowThreshold / totalWork : 0)));
+        return Map.copyOf(result);
+    }
+}
@@ -0,0 +1,88 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts of non-negative values in power-of-two buckets: bucket 0 holds 0,
+ * bucket {@code k} holds {@code [2^(k-1), 2^k)}. Keeps constant memory however
+ * many values are counted, which is what per-task distributions need.
+ *
+ * @param counts number of values in each bucket, up to the highest non-empty one
+ */
+public record Histogram(List<Long> counts) {
+    public Histogram {
+        counts = List.copyOf(counts);
+    }
+
+    static Histogram of(long[] counts) {
+        int size = counts.length;
+        while (size > 0 && counts[size - 1] == 0)
+            size--;
+        final var list = new ArrayList<Long>(size);
+        for (int i = 0; i < size; i++)
+            list.add(counts[i]);
+        return new Histogram(list);
+    }
+
+    /**
+     * @return the bucket {@code value} is counted in
+     */
+    static int bucketOf(long value) {
+        return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * @return smallest value in {@code bucket}
+     */
+    public static long lowerBound(int bucket) {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+
+    /**
+     * @return total number of values
+     */
+    public long count() {
+        long total = 0;
+        for (long c : counts)
+            total += c;
+        return total;
+    }
+
+    /**
+     * @param p percentage between 0 and 100
+     * @return lower bound of the bucket the {@code p}-th percentile falls in, or
+     *         0 if empty; within a factor of two of the true percentile
+     */
+    public long percentile(double p) {
+        final long rank = (long) Math.ceil(Math.clamp(p, 0, 100) / 100 * count());
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.size(); bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= Math.max(rank, 1))
+                return lowerBound(bucket);
+        }
+        return 0;
+    }
+
+    /**
+     * @param unit of the values, e.g. "ns"
+     * @return one line per bucket from the lowest non-empty one, with a bar, for test output
+     */
+    public String describe(String unit) {
+        long most = 1;
+        int first = counts.size();
+        for (int bucket = counts.size() - 1; bucket >= 0; bucket--) {
+            most = Math.max(most, counts.get(bucket));
+            if (counts.get(bucket) > 0)
+                first = bucket;
+        }
+        final var sb = new StringBuilder();
+        for (int bucket = first; bucket < counts.size(); bucket++) {
+            final long c = counts.get(bucket);
+            sb.append(String.format(">= %12d %-3s %10d ", lowerBound(bucket), unit, c));
+            sb.append("#".repeat((int) Math.ceil(40.0 * c / most))).append('\n');
+        }
+        return sb.toString();
+    }
+}
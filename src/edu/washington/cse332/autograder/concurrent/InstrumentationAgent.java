@@ -0,0 +1,72 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import edu.washington.cse332.autograder.Debug;
+
+import java.io.IOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+
+/**
+ * A Java agent that retargets classes using
+ * {@link java.util.concurrent.RecursiveTask},
+ * {@link java.util.concurrent.RecursiveAction},
+ * {@link java.util.concurrent.CountedCompleter},
+ * {@link java.util.concurrent.ForkJoinTask} and
+ * {@link java.util.concurrent.ForkJoinPool} to the shims of this package as
+ * they are loaded, so unmodified submissions can be analyzed by
+ * {@link ForkJoinAnalyzer}. Run with the framework jar as an agent:
+ * <pre>
+ * java -javaagent:/path/to/framework.jar -cp ".:/path/to/framework.jar" ...
+ * </pre>
+ * The jar's manifest names this class as {@code Premain-Class}.
+ * <p>
+ * Only direct subclasses of the task classes are rewritten to implement
+ * {@code __impl_compute}, as the source rewriting did; the shims do not
+ * implement {@link java.util.concurrent.Future}, so submissions must not pass
+ * their tasks to JDK code expecting one. JDK and framework classes are left
+ * alone. A class that cannot be rewritten is loaded unchanged and the reason
+ * is written with {@link Debug#addDebugLine(String)}.
+ */
+public final class InstrumentationAgent implements ClassFileTransformer {
+    private static final String[] SKIPPED = { "java/", "javax/", "jdk/", "sun/", "com/sun/",
+            "edu/washington/cse332/autograder/" };
+
+    private InstrumentationAgent() {
+    }
+
+    public static void premain(String args, Instrumentation instrumentation) {
+        instrumentation.addTransformer(new InstrumentationAgent());
+    }
+
+    public static void agentmain(String args, Instrumentation instrumentation) {
+        premain(args, instrumentation);
+    }
+
+    /**
+     * Rewrites a class file as the agent does when it is loaded.
+     *
+     * @return the rewritten class file, or null if it does not use
+     *         {@code java.util.concurrent} fork-join classes
+     * @throws IOException if the class file is malformed
+     */
+    public static byte[] instrument(byte[] classFile) throws IOException {
+        return ShimRemapper.remap(classFile);
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (loader == null || className == null)
+            return null;
+        for (var prefix : SKIPPED)
+            if (className.startsWith(prefix))
+                return null;
+        try {
+            return instrument(classfileBuffer);
+        } catch (IOException | RuntimeException e) {
+            Debug.addDebugLine("Cannot instrument " + className + ": " + e);
+            return null;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package edu.washington.cse332.autograder.concurrent;
 
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+
 /**
  * A version of {@link java.util.concurrent.ForkJoinTask} with event recording.
  * 
@@ -10,13 +13,30 @@ public abstract class InstrumentedTask<T> {
     // #region private fields
     private final ForkJoinAnalyzer analyzer = ForkJoinAnalyzer.shared();
     private final long parentId = analyzer.getExecutingTaskId();
-    private final long taskId = analyzer.makeId(this);
+    private final int classId;
+    private final long taskId;
+    /** Runs this task on a worker once forked, if the analysis is threaded. */
+    private WorkerTask<T> worker = null;
     private boolean computed = false;
     private boolean forked = false;
     private boolean joined = false;
+    /** Started by {@link ForkJoinPool#invoke(InstrumentedTask)} inside another task. */
+    private boolean invoked = false;
     private T result = null;
     // #endregion
 
+    protected InstrumentedTask() {
+        this(null);
+    }
+
+    /**
+     * @param type class the task is counted as, if not its own; see {@link AnalyzedThread}
+     */
+    InstrumentedTask(Class<?> type) {
+        classId = ForkJoinAnalyzer.classIdOf(type != null ? type : getClass());
+        taskId = analyzer.makeId(classId);
+    }
+
     // #region Simulated functionality
     public final T join() {
         if (joined)
@@ -30,7 +50,7 @@ public abstract class InstrumentedTask<T> {
 
         joined = true;
 
-        result = execute();
+        result = worker != null ? worker.join() : execute();
         logJoin();
 
         return result;
@@ -46,31 +66,157 @@ public abstract class InstrumentedTask<T> {
         forked = true;
 
         logFork();
+        onFork();
+        if (analyzer.isThreaded()) {
+            worker = new WorkerTask<>(this, analyzer.session());
+            // outside the workers, such as in the main task of threads, fork would use the common pool
+            if (java.util.concurrent.ForkJoinTask.getPool() == analyzer.executor())
+                worker.fork();
+            else
+                analyzer.executor().execute(worker);
+        }
         return this;
     }
+
+    /**
+     * Runs this task and waits for it. Inside another task this is a compute;
+     * outside of any task it is {@link ForkJoinPool#invoke(InstrumentedTask)}.
+     * Afterwards {@link #join()} returns the result as well.
+     *
+     * @return the result
+     */
+    public final T invoke() {
+        if (recorder().getExecutingTaskId() == -1) {
+            ForkJoinAnalyzer.shared().logPoolInvoke();
+            result = spawn();
+        } else {
+            logCompute();
+            result = execute();
+            logComputeFinished();
+        }
+        // nothing is left to wait for
+        joined = true;
+        return result;
+    }
+
+    /**
+     * Waits for a forked or submitted task, as {@link #join()} does.
+     *
+     * @return the result
+     */
+    public final T get() throws InterruptedException, ExecutionException {
+        return join();
+    }
+
+    /**
+     * Runs both tasks and waits for them: forks {@code t2}, invokes {@code t1},
+     * and joins {@code t2}, as {@link java.util.concurrent.ForkJoinTask#invokeAll}
+     * does.
+     */
+    public static void invokeAll(InstrumentedTask<?> t1, InstrumentedTask<?> t2) {
+        t2.fork();
+        t1.invoke();
+        t2.join();
+    }
+
+    /**
+     * Runs all tasks and waits for them: forks all but the first, invokes the
+     * first, and joins the others in order.
+     */
+    public static void invokeAll(InstrumentedTask<?>... tasks) {
+        for (int i = tasks.length - 1; i > 0; i--)
+            tasks[i].fork();
+        if (tasks.length > 0)
+            tasks[0].invoke();
+        for (int i = 1; i < tasks.length; i++)
+            tasks[i].join();
+    }
+
+    /**
+     * Runs all tasks and waits for them, see {@link #invokeAll(InstrumentedTask...)}.
+     *
+     * @return {@code tasks}
+     */
+    public static <U extends InstrumentedTask<?>> Collection<U> invokeAll(Collection<U> tasks) {
+        invokeAll(tasks.toArray(new InstrumentedTask<?>[0]));
+        return tasks;
+    }
     // #endregion
 
     protected abstract T execute();
 
+    /**
+     * Called as this task is forked, before it may start.
+     */
+    void onFork() {
+    }
+
+    /**
+     * Exclusively called from {@link ForkJoinPool#submit(InstrumentedTask)}.
+     * Inside another task the submitted task runs asynchronously, so it is
+     * forked; outside of any task it runs now, as with
+     * {@link ForkJoinPool#invoke(InstrumentedTask)}, and can be joined later.
+     */
+    InstrumentedTask<T> submit() {
+        if (recorder().getExecutingTaskId() != -1)
+            return fork();
+        ForkJoinAnalyzer.shared().logPoolInvoke();
+        result = spawn();
+        joined = true;
+        return this;
+    }
+
+    /**
+     * Waits for a forked task that is never joined, without recording a join:
+     * runs it now, unless it runs on a worker thread.
+     */
+    void awaitUnjoined() {
+        if (worker != null)
+            worker.quietlyJoin();
+        else
+            execute();
+    }
+
+    long id() {
+        return taskId;
+    }
+
+    long parentId() {
+        return parentId;
+    }
+
     /**
      * Exclusively called from ForkJoinPool to start execution of this task.
      * 
      * @return
      */
     T spawn() {
-        var realParentId = analyzer.getExecutingTaskId();
-        if (realParentId != -1)
+        var recorder = recorder();
+        var realParentId = recorder.getExecutingTaskId();
+        if (realParentId != -1) {
             // we are contextually inside another task
-            analyzer.log(new ForkJoinEvent.ComputeEvent(realParentId, taskId));
+            invoked = true;
+            recorder.log(ForkJoinEvent.COMPUTE, realParentId, taskId, classId);
+        }
 
-        var result = execute();
+        var result = recorder.isThreaded()
+                ? recorder.executor().invoke(new WorkerTask<>(this, recorder.session()))
+                : execute();
 
         if (realParentId != -1)
-            analyzer.log(new ForkJoinEvent.ComputeFinishedEvent(realParentId, taskId));
+            recorder.log(ForkJoinEvent.COMPUTE_FINISHED, realParentId, taskId, -1);
 
         return result;
     }
 
+    /**
+     * With real threads, a task may run on another thread than the one that
+     * created it, and must record into the buffer of the thread it is on.
+     */
+    private ForkJoinAnalyzer recorder() {
+        return analyzer.isThreaded() ? ForkJoinAnalyzer.shared() : analyzer;
+    }
+
     // #region Event Loggers
     protected final void logCompute() {
         if (forked)
@@ -84,29 +230,33 @@ public abstract class InstrumentedTask<T> {
 
         computed = true;
 
-        analyzer.log(new ForkJoinEvent.ComputeEvent(parentId, taskId));
+        recorder().log(ForkJoinEvent.COMPUTE, parentId, taskId, classId);
     }
 
     protected final void logComputeFinished() {
-        analyzer.log(new ForkJoinEvent.ComputeFinishedEvent(parentId, taskId));
+        recorder().log(ForkJoinEvent.COMPUTE_FINISHED, parentId, taskId, -1);
     }
 
     protected final void logEnter() {
-        analyzer.setExecutingTaskId(taskId);
-        analyzer.log(new ForkJoinEvent.EnterEvent(taskId));
+        var recorder = recorder();
+        recorder.logSize(taskId, this);
+        recorder.setExecutingTaskId(taskId);
+        recorder.log(ForkJoinEvent.ENTER, taskId,
+                PatternDetector.entry(classId, invoked, this instanceof CountedCompleter<?>), -1);
     }
 
     protected final void logExit() {
-        analyzer.log(new ForkJoinEvent.ExitEvent(taskId));
-        analyzer.setExecutingTaskId(parentId);
+        var recorder = recorder();
+        recorder.log(ForkJoinEvent.EXIT, taskId, -1, -1);
+        recorder.setExecutingTaskId(parentId);
     }
 
     protected final void logFork() {
-        analyzer.log(new ForkJoinEvent.ForkEvent(parentId, taskId));
+        recorder().log(ForkJoinEvent.FORK, parentId, taskId, classId);
     }
 
     protected final void logJoin() {
-        analyzer.log(new ForkJoinEvent.JoinEvent(parentId, taskId));
+        recorder().log(ForkJoinEvent.JOIN, parentId, taskId, -1);
     }
 
     // #endregion
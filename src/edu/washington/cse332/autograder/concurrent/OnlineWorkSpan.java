@@ -0,0 +1,247 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Computes the metrics of the {@link ForkJoinGraph} an event stream would
+ * produce, while the events happen and without keeping them.
+ * <p>
+ * State is only kept for live tasks (those on the execution stack), for forked
+ * tasks that have not started, and for finished tasks that have not been
+ * joined yet; in a well-formed fork join program that is proportional to the
+ * recursion depth. Each segment's longest incoming path is folded into its task
+ * as the segment closes: sequential edges chain the task's own segments, fork
+ * and compute edges seed a child's first segment, and join and return edges
+ * seed the parent's next segment.
+ * <p>
+ * Events must be fed in timestamp order. If more than {@code budget} forked or
+ * finished tasks wait to be connected to their parents, those connections are
+ * dropped: work stays exact, but span and final segment count become
+ * estimates.
+ */
+final class OnlineWorkSpan {
+    /**
+     * Longest paths ending at some segment. Unreachable from the root if
+     * {@code segments < 0}.
+     */
+    private static final long UNREACHABLE = -1;
+
+    private static final class Task {
+        long lastTimestamp;
+        boolean started;
+        /** Inside a Compute -> ComputeFinished interval, which is not active. */
+        boolean waiting;
+
+        /** Number of active segments so far. */
+        int segmentCount;
+        /** Path lengths ending at the last active segment. */
+        long segments = UNREACHABLE;
+        long nanos;
+        /** Whether the last active segment has an outgoing edge yet. */
+        boolean lastHasOutgoing;
+
+        /** Longest paths arriving at the next active segment. */
+        long incomingSegments = UNREACHABLE;
+        long incomingNanos;
+        /** Finished children whose last segment will point at the next active segment. */
+        int pendingSources;
+
+        void clear() {
+            lastTimestamp = 0;
+            started = false;
+            waiting = false;
+            segmentCount = 0;
+            segments = UNREACHABLE;
+            nanos = 0;
+            lastHasOutgoing = false;
+            incomingSegments = UNREACHABLE;
+            incomingNanos = 0;
+            pendingSources = 0;
+        }
+    }
+
+    /** Path lengths at the parent's segment a child was forked or computed from. */
+    private record Start(long parentId, int parentSegment, long segments, long nanos) {
+    }
+
+    /** Path lengths at a finished task's last segment, until its parent joins it. */
+    private record Finish(long segments, long nanos, boolean hasOutgoing) {
+    }
+
+    private final Map<Long, Task> live = new HashMap<>();
+    private final Map<Long, Start> starts = new HashMap<>();
+    private final Map<Long, Finish> finishes = new HashMap<>();
+    private final ArrayDeque<Task> free = new ArrayDeque<>();
+
+    private long budget = Long.MAX_VALUE;
+    /** Instrumentation time in each segment, subtracted from its duration. */
+    private long overhead;
+    private boolean saturated;
+    private boolean rootSeen;
+    private long segmentTotal;
+    private long nanosTotal;
+    private long longestSegments;
+    private long longestNanos;
+    private int finalSegments;
+
+    void reset(long budget, long overhead) {
+        this.budget = budget;
+        this.overhead = overhead;
+        saturated = false;
+        for (var task : live.values())
+            release(task);
+        live.clear();
+        starts.clear();
+        finishes.clear();
+        rootSeen = false;
+        segmentTotal = 0;
+        nanosTotal = 0;
+        longestSegments = 0;
+        longestNanos = 0;
+        finalSegments = 0;
+    }
+
+    void accept(ForkJoinEvent kind, long taskId, long childId, long timestamp) {
+        final var task = live.computeIfAbsent(taskId, k -> acquire());
+
+        // close [lastTimestamp, timestamp) of this task
+        if (task.started && !task.waiting && timestamp > task.lastTimestamp)
+            closeSegment(taskId, task, Math.max(0, timestamp - task.lastTimestamp - overhead));
+        task.started = true;
+        task.lastTimestamp = timestamp;
+
+        switch (kind) {
+            case FORK -> track(starts, childId, new Start(taskId, task.segmentCount,
+                    task.segmentCount > 0 ? task.segments : UNREACHABLE, task.nanos));
+            case COMPUTE -> {
+                track(starts, childId, new Start(taskId, task.segmentCount,
+                        task.segmentCount > 0 ? task.segments : UNREACHABLE, task.nanos));
+                task.waiting = true;
+            }
+            case COMPUTE_FINISHED, JOIN -> {
+                if (kind == ForkJoinEvent.COMPUTE_FINISHED)
+                    task.waiting = false;
+                final var finish = finishes.remove(childId);
+                if (finish != null) {
+                    if (finish.segments() != UNREACHABLE) {
+                        task.incomingSegments = Math.max(task.incomingSegments, finish.segments());
+                        task.incomingNanos = Math.max(task.incomingNanos, finish.nanos());
+                    }
+                    if (!finish.hasOutgoing())
+                        task.pendingSources++;
+                }
+            }
+            case EXIT -> {
+                if (task.segmentCount > 0)
+                    track(finishes, taskId, new Finish(task.segments, task.nanos, task.lastHasOutgoing));
+                // joins that never reached another segment of this task
+                finalSegments += task.pendingSources;
+                live.remove(taskId);
+                release(task);
+            }
+            case ENTER -> {
+                // the first segment starts here
+            }
+        }
+    }
+
+    private void closeSegment(long taskId, Task task, long duration) {
+        long inSegments = task.incomingSegments;
+        long inNanos = task.incomingNanos;
+
+        if (task.segmentCount == 0) {
+            // first segment: reached by the fork or compute that started this task
+            final var start = starts.remove(taskId);
+            if (start == null && saturated) {
+                // the connection to the parent was dropped; count this subtree on its own
+                inSegments = Math.max(inSegments, 0);
+            } else if (start != null) {
+                if (start.segments() != UNREACHABLE) {
+                    inSegments = Math.max(inSegments, start.segments());
+                    inNanos = Math.max(inNanos, start.nanos());
+                }
+                final var parent = live.get(start.parentId());
+                if (parent != null && parent.segmentCount == start.parentSegment() && start.parentSegment() > 0)
+                    parent.lastHasOutgoing = true;
+            }
+        } else {
+            // sequential edge from the previous segment
+            if (task.segments != UNREACHABLE) {
+                inSegments = Math.max(inSegments, task.segments);
+                inNanos = Math.max(inNanos, task.nanos);
+            }
+        }
+
+        if (!rootSeen) {
+            // the earliest segment is the root of the graph
+            rootSeen = true;
+            inSegments = 0;
+            inNanos = 0;
+        }
+
+        task.segmentCount++;
+        if (inSegments == UNREACHABLE) {
+            task.segments = UNREACHABLE;
+            task.nanos = 0;
+        } else {
+            task.segments = inSegments + 1;
+            task.nanos = inNanos + duration;
+            longestSegments = Math.max(longestSegments, task.segments);
+            longestNanos = Math.max(longestNanos, task.nanos);
+        }
+        task.lastHasOutgoing = false;
+        task.incomingSegments = UNREACHABLE;
+        task.incomingNanos = 0;
+        task.pendingSources = 0;
+
+        segmentTotal++;
+        nanosTotal += duration;
+    }
+
+    private <V> void track(Map<Long, V> pending, long taskId, V value) {
+        if (saturated)
+            return;
+        if (starts.size() + finishes.size() >= budget) {
+            saturated = true;
+            starts.clear();
+            finishes.clear();
+            return;
+        }
+        pending.put(taskId, value);
+    }
+
+    /**
+     * @return the metrics of everything fed so far
+     */
+    ForkJoinMetrics metrics() {
+        int finals = finalSegments;
+        // finished tasks nobody joined, and tasks still running
+        for (var finish : finishes.values())
+            if (!finish.hasOutgoing())
+                finals++;
+        for (var task : live.values()) {
+            if (task.segmentCount > 0 && !task.lastHasOutgoing)
+                finals++;
+            finals += task.pendingSources;
+        }
+        final var estimated = ForkJoinMetrics.exact();
+        if (saturated) {
+            estimated.add(ForkJoinMetrics.Metric.STRUCTURAL_CRITICAL_PATH);
+            estimated.add(ForkJoinMetrics.Metric.EMPIRICAL_CRITICAL_PATH);
+            estimated.add(ForkJoinMetrics.Metric.FINAL_SEGMENT_COUNT);
+        }
+        return ForkJoinMetrics.of(segmentTotal, longestSegments, nanosTotal, longestNanos, finals, estimated);
+    }
+
+    private Task acquire() {
+        final var task = free.poll();
+        return task != null ? task : new Task();
+    }
+
+    private void release(Task task) {
+        task.clear();
+        free.push(task);
+    }
+}
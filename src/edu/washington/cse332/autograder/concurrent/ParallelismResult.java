@@ -1,18 +1,45 @@
 package edu.washington.cse332.autograder.concurrent;
 
+import java.util.List;
 import java.util.Map;
 
 /**
  * A result of parallelism analysis.
  *
- * @param graph        the task DAG
+ * @param graph        the task DAG, or null if analyzed with {@link AnalysisOptions#streaming()} or if
+ *                     the {@link AnalysisOptions#eventBudget()} was exceeded
  * @param taskCount    number of new Recursive Actions or Tasks
  * @param perTaskCount task counts, broken down by name of class.
  * @param computeRatio ratio of compute calls to compute + fork calls
+ * @param metrics      work and span, available even without a graph
+ * @param elapsedNanos wall-clock time the analyzed Runnable took, including recording
+ * @param antiPatterns uses of fork and join that cost parallelism, most costly first
+ * @param antiPatternsComplete false if more tasks waited to be joined than the
+ *                     {@link AnalysisOptions#eventBudget()}, after which no more
+ *                     anti-patterns were looked for
+ * @param granularity  leaf tasks by name of class, see {@link Granularity}
  * @author Albert Du
  */
-public record ParallelismResult(ForkJoinGraph graph, long taskCount, Map<String, Long> perTaskCount, double computeRatio, Map<String, Double> perTaskComputeRatio, long poolInvokes) {
+public record ParallelismResult(ForkJoinGraph graph, long taskCount, Map<String, Long> perTaskCount, double computeRatio, Map<String, Double> perTaskComputeRatio, long poolInvokes, ForkJoinMetrics metrics, long elapsedNanos, List<AntiPattern> antiPatterns, boolean antiPatternsComplete, Map<String, Granularity> granularity) {
     public boolean allForkedTasksJoined() {
-        return taskCount == 0 || graph.finalSegmentCount() == 1;
+        return taskCount == 0 || metrics.finalSegmentCount() == 1;
+    }
+
+    /**
+     * @return share of all work done in leaf tasks whose work was below
+     *         {@link AnalysisOptions#overheadThreshold()}, between 0 and 1
+     */
+    public double workBelowThreshold() {
+        double share = 0;
+        for (var g : granularity.values())
+            share += g.workBelowThreshold();
+        return share;
+    }
+
+    /**
+     * @return the anti-patterns of {@code kind}, in any task class
+     */
+    public List<AntiPattern> antiPatterns(AntiPattern.Kind kind) {
+        return antiPatterns.stream().filter(p -> p.kind() == kind).toList();
     }
 }
@@ -0,0 +1,333 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds {@link AntiPattern}s in an event stream, while the events happen and
+ * without keeping them, as {@link OnlineWorkSpan} does for the metrics.
+ * <p>
+ * Each live task tracks the longest path from its start to its latest event,
+ * with segments measured as in {@link OnlineWorkSpan}; a child's span joins
+ * that path where the child is joined or returns. A suspicious join, return
+ * or nested invoke remembers the child's span and how much it lengthened the
+ * path. Once the task exits, the rest of its path is known, and the span cost
+ * is the part of the child's span that could have overlapped with that rest,
+ * before or after the child.
+ * <p>
+ * A fork counts as immediately joined only if the parent did less than the
+ * threshold of its own work between the fork and the join: the time from the
+ * fork to the child's start, plus the time from the child's exit to the join,
+ * as a forked child runs inside the join unless there are worker threads.
+ * With worker threads, work of the parent that overlaps a child run elsewhere
+ * is not seen. The logical clock sees no work without events, so with it
+ * every such fork counts.
+ * <p>
+ * As in {@link OnlineWorkSpan}, state is only kept for live tasks, for forked
+ * tasks that have not started, and for finished tasks that have not been
+ * joined. If more than {@code budget} forked or finished tasks wait, nothing
+ * more is reported, see {@link #complete()}; leaf tasks are still handed to a
+ * {@link GranularityProfile} as they exit.
+ * <p>
+ * {@link ForkJoinEvent#ENTER} events carry the entering task's class and how
+ * it was started in the child id column, see {@link #entry(int, boolean, boolean)}.
+ * Events must be fed in timestamp order.
+ */
+final class PatternDetector {
+    private static final AntiPattern.Kind[] KINDS = AntiPattern.Kind.values();
+
+    private static final class Frame {
+        int classId = -1;
+        boolean invoked;
+        /** A {@link CountedCompleter}, whose joins wait for completion and are not its own. */
+        boolean completer;
+        boolean started;
+        /** Inside a Compute -> ComputeFinished interval, which is not active. */
+        boolean waiting;
+        long startTimestamp;
+        long lastTimestamp;
+        /** Longest path from this task's start to its latest event. */
+        long path;
+        /** This task's previous event, not counting its children's. */
+        ForkJoinEvent lastKind;
+        long lastChild;
+        /** Where this task was forked, or null. */
+        Fork fork;
+
+        /** Forked children not joined yet. */
+        int outstanding;
+        int forks;
+        /** Children computed by compute(), not by pool.invoke. */
+        int computes;
+        long computeSpans;
+        long longestCompute;
+        /** Path when the running compute started. */
+        long computeFrom;
+        /** Triples of kind ordinal, child span and how much the child lengthened the path, until exit. */
+        long[] pending = new long[0];
+        int pendingSize;
+
+        void clear() {
+            classId = -1;
+            invoked = false;
+            completer = false;
+            started = false;
+            waiting = false;
+            startTimestamp = 0;
+            lastTimestamp = 0;
+            path = 0;
+            lastKind = null;
+            lastChild = 0;
+            fork = null;
+            outstanding = 0;
+            forks = 0;
+            computes = 0;
+            computeSpans = 0;
+            longestCompute = 0;
+            computeFrom = 0;
+            pendingSize = 0;
+        }
+
+        /**
+         * @param from path where the child was started
+         */
+        void suspect(AntiPattern.Kind kind, long childSpan, long from) {
+            if (pendingSize + 3 > pending.length)
+                pending = Arrays.copyOf(pending, Math.max(6, pending.length * 2));
+            pending[pendingSize++] = kind.ordinal();
+            pending[pendingSize++] = childSpan;
+            pending[pendingSize++] = path - from;
+        }
+    }
+
+    /** Occurrences of one kind in one class, and the most costly one. */
+    private static final class Tally {
+        long occurrences;
+        long exampleTaskId;
+        long spanCost;
+    }
+
+    /** Path and time of the parent at a fork. */
+    private record Fork(long path, long timestamp) {
+    }
+
+    /**
+     * A finished task's span, until its parent joins it or it returns.
+     *
+     * @param invoked whether the task was invoked inside another
+     * @param fork    where the task was forked, or null
+     */
+    private record Finish(long span, boolean invoked, Fork fork, long startTimestamp, long exitTimestamp) {
+    }
+
+    private final Map<Long, Frame> live = new HashMap<>();
+    /** Forked tasks that have not started. */
+    private final Map<Long, Fork> forked = new HashMap<>();
+    private final Map<Long, Finish> finishes = new HashMap<>();
+    private final ArrayDeque<Frame> free = new ArrayDeque<>();
+    /** Indexed by {@code classId * KINDS.length + kind}. */
+    private Tally[] tallies = new Tally[0];
+
+    private long budget = Long.MAX_VALUE;
+    private boolean saturated;
+    /** Instrumentation time in each segment, subtracted from its duration. */
+    private long overhead;
+    /** Own work of a parent between a fork and a join below which the join is immediate. */
+    private long threshold;
+    /** Where leaves, the tasks without children, are counted. */
+    private final GranularityProfile leaves;
+
+    PatternDetector(GranularityProfile leaves) {
+        this.leaves = leaves;
+    }
+
+    /**
+     * @return the child id of an {@link ForkJoinEvent#ENTER} event
+     * @param classId   class of the entering task
+     * @param invoked   whether {@link ForkJoinPool#invoke(InstrumentedTask)}
+     *                  started it inside another task
+     * @param completer whether the task is a {@link CountedCompleter}
+     */
+    static long entry(int classId, boolean invoked, boolean completer) {
+        return (long) classId << 2 | (completer ? 2 : 0) | (invoked ? 1 : 0);
+    }
+
+    /**
+     * @param budget    most forked or finished tasks waiting at once
+     * @param overhead  instrumentation time in each segment
+     * @param threshold own work of a parent between a fork and a join below
+     *                  which the join counts as immediate
+     */
+    void reset(long budget, long overhead, long threshold) {
+        this.budget = budget;
+        this.overhead = overhead;
+        this.threshold = threshold;
+        saturated = false;
+        for (var frame : live.values())
+            release(frame);
+        live.clear();
+        forked.clear();
+        finishes.clear();
+        Arrays.fill(tallies, null);
+    }
+
+    /**
+     * @return false if tasks were over budget, so that some anti-patterns may be missing
+     */
+    boolean complete() {
+        return !saturated;
+    }
+
+    void accept(ForkJoinEvent kind, long taskId, long childId, long timestamp) {
+        var frame = live.get(taskId);
+        if (frame == null) {
+            frame = acquire();
+            live.put(taskId, frame);
+            frame.startTimestamp = timestamp;
+            frame.fork = forked.remove(taskId);
+        }
+
+        if (frame.started && !frame.waiting && timestamp > frame.lastTimestamp)
+            frame.path += Math.max(0, timestamp - frame.lastTimestamp - overhead);
+        frame.started = true;
+        frame.lastTimestamp = timestamp;
+
+        switch (kind) {
+            case ENTER -> {
+                if (childId >= 0) {
+                    frame.classId = (int) (childId >>> 2);
+                    frame.completer = (childId & 2) != 0;
+                    frame.invoked = (childId & 1) != 0;
+                }
+            }
+            case FORK -> {
+                track(forked, childId, new Fork(frame.path, timestamp));
+                frame.outstanding++;
+                frame.forks++;
+            }
+            case COMPUTE -> {
+                frame.computeFrom = frame.path;
+                frame.waiting = true;
+            }
+            case COMPUTE_FINISHED -> {
+                frame.waiting = false;
+                final var finish = finishes.remove(childId);
+                final long span = finish != null ? finish.span() : 0;
+                frame.path = Math.max(frame.path, frame.computeFrom + span);
+                if (finish != null && finish.invoked()) {
+                    frame.suspect(AntiPattern.Kind.NESTED_INVOKE, span, frame.computeFrom);
+                } else {
+                    frame.computes++;
+                    frame.computeSpans += span;
+                    frame.longestCompute = Math.max(frame.longestCompute, span);
+                }
+            }
+            case JOIN -> {
+                final var finish = finishes.remove(childId);
+                final long span = finish != null ? finish.span() : 0;
+                final var fork = finish != null ? finish.fork() : forked.remove(childId);
+                final long from = fork != null ? fork.path() : frame.path;
+                frame.path = Math.max(frame.path, from + span);
+                if (fork != null)
+                    frame.outstanding--;
+                if (frame.lastKind == ForkJoinEvent.FORK && frame.lastChild == childId && frame.outstanding == 0
+                        && !frame.completer && finish != null && fork != null
+                        // the parent's own work, leaving out the child run inside the join
+                        && gap(fork.timestamp(), finish.startTimestamp()) + gap(finish.exitTimestamp(), timestamp)
+                                < threshold)
+                    frame.suspect(AntiPattern.Kind.FORK_THEN_JOIN, span, from);
+            }
+            case EXIT -> {
+                for (int i = 0; i < frame.pendingSize; i += 3) {
+                    // the child could have run next to everything else on this task's path
+                    final long rest = frame.path - frame.pending[i + 2];
+                    tally(KINDS[(int) frame.pending[i]], frame.classId, taskId, Math.min(frame.pending[i + 1], rest));
+                }
+                if (frame.forks == 0 && frame.computes == 0 && frame.pendingSize == 0)
+                    // a leaf's path is all its own work
+                    leaves.leaf(frame.classId, taskId, frame.path);
+                if (frame.forks == 0 && frame.computes >= 2)
+                    // forking all but the longest would leave only the longest on the path
+                    tally(AntiPattern.Kind.COMPUTE_ALL, frame.classId, taskId,
+                            frame.computeSpans - frame.longestCompute);
+                track(finishes, taskId,
+                        new Finish(frame.path, frame.invoked, frame.fork, frame.startTimestamp, timestamp));
+                live.remove(taskId);
+                release(frame);
+                return;
+            }
+        }
+        frame.lastKind = kind;
+        frame.lastChild = childId;
+    }
+
+    /**
+     * @return the time from {@code from} to {@code to} less instrumentation,
+     *         or {@link Long#MAX_VALUE} / 2 if it runs backwards
+     */
+    private long gap(long from, long to) {
+        return to < from ? Long.MAX_VALUE / 2 : Math.max(0, to - from - overhead);
+    }
+
+    private <V> void track(Map<Long, V> pending, long taskId, V value) {
+        if (saturated)
+            return;
+        if (forked.size() + finishes.size() >= budget) {
+            saturated = true;
+            forked.clear();
+            finishes.clear();
+            return;
+        }
+        pending.put(taskId, value);
+    }
+
+    private void tally(AntiPattern.Kind kind, int classId, long taskId, long spanCost) {
+        if (classId < 0 || saturated)
+            return;
+        final int index = classId * KINDS.length + kind.ordinal();
+        if (index >= tallies.length)
+            tallies = Arrays.copyOf(tallies, Math.max(index + 1, tallies.length * 2));
+        var tally = tallies[index];
+        if (tally == null)
+            tally = tallies[index] = new Tally();
+        if (tally.occurrences++ == 0 || spanCost > tally.spanCost) {
+            tally.exampleTaskId = taskId;
+            tally.spanCost = spanCost;
+        }
+    }
+
+    /**
+     * @param classNames short class names, indexed by class id
+     * @return everything found so far, most costly first
+     */
+    List<AntiPattern> antiPatterns(List<String> classNames) {
+        final var found = new ArrayList<AntiPattern>();
+        for (int index = 0; index < tallies.length; index++) {
+            final var tally = tallies[index];
+            if (tally == null)
+                continue;
+            final int classId = index / KINDS.length;
+            final var kind = KINDS[index % KINDS.length];
+            final var name = classId < classNames.size() ? classNames.get(classId) : "?";
+            found.add(new AntiPattern(kind, name, tally.occurrences, tally.exampleTaskId, tally.spanCost));
+        }
+        found.sort(Comparator.comparingDouble(AntiPattern::spanCost).reversed()
+                .thenComparing(AntiPattern::taskClass).thenComparing(AntiPattern::kind));
+        return List.copyOf(found);
+    }
+
+    private Frame acquire() {
+        final var frame = free.poll();
+        return frame != null ? frame : new Frame();
+    }
+
+    private void release(Frame frame) {
+        frame.clear();
+        free.push(frame);
+    }
+}
@@ -0,0 +1,71 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.util.List;
+
+/**
+ * Empirical metrics over repeated runs of one workload, as measured by
+ * {@link ForkJoinAnalyzer#analyzeRepeated(Runnable, int, int, AnalysisOptions)}.
+ * Structural metrics do not vary between runs; see any element of
+ * {@link #metrics()}.
+ *
+ * @param metrics               metrics of each measured run, in order
+ * @param empiricalWork         of {@link ForkJoinMetrics#empiricalWork()}
+ * @param empiricalCriticalPath of {@link ForkJoinMetrics#empiricalCriticalPath()}
+ * @param empiricalSpeedup      of {@link ForkJoinMetrics#empiricalSpeedup()}
+ * @param elapsedNanos          of {@link ParallelismResult#elapsedNanos()}
+ */
+public record RepeatedResult(List<ForkJoinMetrics> metrics, Distribution empiricalWork,
+        Distribution empiricalCriticalPath, Distribution empiricalSpeedup, Distribution elapsedNanos) {
+    /**
+     * Default for {@link #isStable(double)}: the median speedup is known to
+     * within 10%.
+     */
+    public static final double DEFAULT_TOLERANCE = 0.1;
+
+    public RepeatedResult {
+        metrics = List.copyOf(metrics);
+    }
+
+    /**
+     * @return whether the median empirical speedup is known to within
+     *         {@link #DEFAULT_TOLERANCE}
+     * @see #isStable(double)
+     */
+    public boolean isStable() {
+        return isStable(DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Whether the measurements agree well enough to assert on. Check this before
+     * comparing an empirical speedup to a threshold; if it is false, the machine
+     * was too noisy, or there were too few iterations, to tell.
+     *
+     * @param tolerance largest acceptable {@link Distribution#relativeUncertainty()}
+     *                  of the empirical speedup and critical path
+     * @return whether both are within tolerance
+     */
+    public boolean isStable(double tolerance) {
+        return empiricalSpeedup.relativeUncertainty() <= tolerance
+                && empiricalCriticalPath.relativeUncertainty() <= tolerance;
+    }
+
+    /**
+     * @return a table of the distributions and the stability verdict, for test output
+     */
+    public String describe() {
+        final var sb = new StringBuilder();
+        sb.append(String.format("%-22s %14s %14s %14s %14s %14s%n", "metric", "p10", "median", "p90",
+                "median 95% lo", "median 95% hi"));
+        row(sb, "empirical work", empiricalWork);
+        row(sb, "empirical span", empiricalCriticalPath);
+        row(sb, "empirical speedup", empiricalSpeedup);
+        row(sb, "elapsed ns", elapsedNanos);
+        sb.append(metrics.size()).append(" runs, ").append(isStable() ? "stable" : "not stable").append('\n');
+        return sb.toString();
+    }
+
+    private static void row(StringBuilder sb, String name, Distribution d) {
+        sb.append(String.format("%-22s %14.2f %14.2f %14.2f %14.2f %14.2f%n", name, d.percentile(10), d.median(),
+                d.percentile(90), d.medianLower(), d.medianUpper()));
+    }
+}
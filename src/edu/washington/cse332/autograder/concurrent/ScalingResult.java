@@ -0,0 +1,41 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.util.List;
+
+/**
+ * Growth of work and span over a series of input sizes, as measured by
+ * {@link ForkJoinAnalyzer#analyzeScaling(java.util.function.IntFunction, int, int, AnalysisOptions)}.
+ *
+ * @param sizes   input sizes, increasing
+ * @param metrics metrics of the run at each size
+ * @param work    inferred class of {@link ForkJoinMetrics#structuralWork()}
+ * @param span    inferred class of {@link ForkJoinMetrics#structuralCriticalPath()}
+ */
+public record ScalingResult(List<Integer> sizes, List<ForkJoinMetrics> metrics, Complexity work, Complexity span) {
+    public ScalingResult {
+        sizes = List.copyOf(sizes);
+        metrics = List.copyOf(metrics);
+    }
+
+    /**
+     * @param maxWork expected bound on work, e.g. {@link Complexity#LINEAR}
+     * @param maxSpan expected bound on span, e.g. {@link Complexity#LOGARITHMIC}
+     * @return whether neither work nor span grows faster than expected
+     */
+    public boolean within(Complexity maxWork, Complexity maxSpan) {
+        return work.compareTo(maxWork) <= 0 && span.compareTo(maxSpan) <= 0;
+    }
+
+    /**
+     * @return a table of the measurements and the inferred classes, for test output
+     */
+    public String describe() {
+        final var sb = new StringBuilder();
+        sb.append(String.format("%12s %14s %14s%n", "n", "work", "span"));
+        for (int i = 0; i < sizes.size(); i++)
+            sb.append(String.format("%12d %14.0f %14.0f%n", sizes.get(i), metrics.get(i).structuralWork(),
+                    metrics.get(i).structuralCriticalPath()));
+        sb.append("work grows like ").append(work).append(", span grows like ").append(span).append('\n');
+        return sb.toString();
+    }
+}
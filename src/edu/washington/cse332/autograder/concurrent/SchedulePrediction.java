@@ -0,0 +1,31 @@
+package edu.washington.cse332.autograder.concurrent;
+
+/**
+ * Predicted running time of a {@link ForkJoinGraph} on a fixed number of
+ * processors, as simulated by
+ * {@link ForkJoinGraph#predictStructuralSchedules(Scheduler, int)} (time in
+ * segments) or {@link ForkJoinGraph#predictEmpiricalSchedules(Scheduler, int)}
+ * (time in the unit of {@link ForkJoinMetrics#empiricalWork()}).
+ *
+ * @param processors number of simulated processors, P
+ * @param time       predicted running time T_P
+ * @param speedup    T_1 / T_P
+ * @param efficiency speedup / P
+ */
+public record SchedulePrediction(int processors, double time, double speedup, double efficiency) {
+    public enum Scheduler {
+        /**
+         * A ready segment runs as soon as any processor is idle. Within the
+         * Brent bound T_P &le; T_1 / P + T_&infin;.
+         */
+        GREEDY,
+        /**
+         * Every processor works off its own deque and an idle processor steals
+         * the oldest segment of a random processor whose deque has any, as a
+         * {@link java.util.concurrent.ForkJoinPool} thief keeps trying victims
+         * until one has work. Segments stay on the processor whose segment
+         * enabled them unless stolen. Seeded, so predictions are reproducible.
+         */
+        WORK_STEALING
+    }
+}
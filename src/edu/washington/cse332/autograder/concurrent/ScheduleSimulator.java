@@ -0,0 +1,281 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.util.*;
+
+/**
+ * Replays the segments of a {@link ForkJoinGraph} on P simulated processors.
+ * Segments take one unit of time each, or as long as they took when recorded;
+ * one simulation takes
+ * O((V + E) log P + P) time for V segments and E edges, as only processors
+ * that start or finish a segment are visited at each step.
+ */
+final class ScheduleSimulator {
+    private static final long SEED = 332;
+
+    private final int size;
+    private final long[] weight;
+    /** Successors of segment {@code u} are {@code succ[succStart[u]] .. succ[succStart[u + 1] - 1]}. */
+    private final int[] succStart;
+    private final int[] succ;
+    private final int[] indegree;
+    private final long work;
+
+    /**
+     * @param durations  duration of each segment
+     * @param succStart  successors of segment {@code u} are
+     *                   {@code succ[succStart[u]] .. succ[succStart[u + 1] - 1]}
+     * @param succ       successor lists
+     * @param empirical  weight segments by duration instead of one unit each
+     */
+    ScheduleSimulator(long[] durations, int[] succStart, int[] succ, boolean empirical) {
+        size = durations.length;
+        this.succStart = succStart;
+        this.succ = succ;
+        weight = new long[size];
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            weight[i] = empirical ? Math.max(1, durations[i]) : 1;
+            total += weight[i];
+        }
+        work = total;
+        indegree = new int[size];
+        for (int v : succ)
+            indegree[v]++;
+    }
+
+    /**
+     * @return predictions for 1 to {@code maxProcessors} processors
+     */
+    List<SchedulePrediction> predict(SchedulePrediction.Scheduler scheduler, int maxProcessors) {
+        final var predictions = new ArrayList<SchedulePrediction>(maxProcessors);
+        for (int p = 1; p <= maxProcessors; p++) {
+            final long time = size == 0 ? 0 : switch (scheduler) {
+                case GREEDY -> greedy(p);
+                case WORK_STEALING -> workStealing(p, new Random(SEED));
+            };
+            final double speedup = time == 0 ? 1 : (double) work / time;
+            predictions.add(new SchedulePrediction(p, time, speedup, speedup / p));
+        }
+        return predictions;
+    }
+
+    private long greedy(int processors) {
+        final int[] pending = indegree.clone();
+        final var ready = new IntQueue(size);
+        for (int u = 0; u < size; u++)
+            if (pending[u] == 0)
+                ready.addLast(u);
+
+        final var running = new FinishHeap(processors);
+        long now = 0;
+        while (true) {
+            while (running.size() < processors && !ready.isEmpty()) {
+                final int u = ready.pollFirst();
+                running.add(now + weight[u], u);
+            }
+            if (running.size() == 0)
+                return now;
+            now = running.minTime();
+            while (running.size() > 0 && running.minTime() == now) {
+                final int u = running.poll();
+                for (int j = succStart[u]; j < succStart[u + 1]; j++)
+                    if (--pending[succ[j]] == 0)
+                        ready.addLast(succ[j]);
+            }
+        }
+    }
+
+    private long workStealing(int processors, Random random) {
+        final int[] pending = indegree.clone();
+        final var deques = new IntQueue[processors];
+        for (int p = 0; p < processors; p++)
+            deques[p] = new IntQueue(16);
+        // processors whose deque has segments, for picking a victim without scanning them all
+        final var stealable = new IntSet(processors);
+        for (int u = 0; u < size; u++)
+            if (pending[u] == 0)
+                deques[0].addLast(u);
+        if (!deques[0].isEmpty())
+            stealable.add(0);
+
+        // processor running each segment; processors that just finished, and those idle
+        final int[] owner = new int[size];
+        final var finished = new IntQueue(processors);
+        final var idle = new IntQueue(processors);
+        for (int p = 0; p < processors; p++)
+            finished.addLast(p);
+        final var running = new FinishHeap(processors);
+        long now = 0;
+        while (true) {
+            // whatever a segment enabled runs next on the processor that ran it
+            while (!finished.isEmpty()) {
+                final int p = finished.pollFirst();
+                if (deques[p].isEmpty()) {
+                    idle.addLast(p);
+                    continue;
+                }
+                final int u = deques[p].pollLast();
+                if (deques[p].isEmpty())
+                    stealable.remove(p);
+                owner[u] = p;
+                running.add(now + weight[u], u);
+            }
+            // idle processors only ever have empty deques; each steals until none are left
+            while (!idle.isEmpty() && !stealable.isEmpty()) {
+                final int p = idle.pollFirst();
+                final int victim = stealable.get(random.nextInt(stealable.size()));
+                final int u = deques[victim].pollFirst();
+                if (deques[victim].isEmpty())
+                    stealable.remove(victim);
+                owner[u] = p;
+                running.add(now + weight[u], u);
+            }
+            if (running.size() == 0)
+                return now;
+            now = running.minTime();
+            while (running.size() > 0 && running.minTime() == now) {
+                final int u = running.poll();
+                final int p = owner[u];
+                for (int j = succStart[u]; j < succStart[u + 1]; j++) {
+                    if (--pending[succ[j]] == 0) {
+                        if (deques[p].isEmpty())
+                            stealable.add(p);
+                        deques[p].addLast(succ[j]);
+                    }
+                }
+                finished.addLast(p);
+            }
+        }
+    }
+
+    /** Set of ints in {@code [0, capacity)} with constant-time add, remove and indexed access. */
+    private static final class IntSet {
+        private final int[] items;
+        /** Index of each member in {@link #items}, or -1. */
+        private final int[] index;
+        private int size;
+
+        IntSet(int capacity) {
+            items = new int[capacity];
+            index = new int[capacity];
+            Arrays.fill(index, -1);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int i) {
+            return items[i];
+        }
+
+        void add(int item) {
+            if (index[item] >= 0)
+                return;
+            index[item] = size;
+            items[size++] = item;
+        }
+
+        void remove(int item) {
+            final int i = index[item];
+            if (i < 0)
+                return;
+            final int last = items[--size];
+            items[i] = last;
+            index[last] = i;
+            index[item] = -1;
+        }
+    }
+
+    /** Growable ring buffer of ints, usable as deque. */
+    private static final class IntQueue {
+        private int[] items;
+        private int head;
+        private int size;
+
+        IntQueue(int capacity) {
+            items = new int[Math.max(1, capacity)];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void addLast(int item) {
+            if (size == items.length) {
+                final int[] grown = new int[items.length * 2];
+                for (int i = 0; i < size; i++)
+                    grown[i] = items[(head + i) % items.length];
+                items = grown;
+                head = 0;
+            }
+            items[(head + size++) % items.length] = item;
+        }
+
+        int pollFirst() {
+            final int item = items[head];
+            head = (head + 1) % items.length;
+            size--;
+            return item;
+        }
+
+        int pollLast() {
+            return items[(head + --size) % items.length];
+        }
+    }
+
+    /** Binary min-heap of running segments by finish time. */
+    private static final class FinishHeap {
+        private final long[] times;
+        private final int[] segments;
+        private int size;
+
+        FinishHeap(int capacity) {
+            times = new long[capacity];
+            segments = new int[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        long minTime() {
+            return times[0];
+        }
+
+        void add(long time, int segment) {
+            int i = size++;
+            while (i > 0 && times[(i - 1) / 2] > time) {
+                times[i] = times[(i - 1) / 2];
+                segments[i] = segments[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            times[i] = time;
+            segments[i] = segment;
+        }
+
+        int poll() {
+            final int top = segments[0];
+            final long time = times[--size];
+            final int segment = segments[size];
+            int i = 0;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && times[child + 1] < times[child])
+                    child++;
+                if (times[child] >= time)
+                    break;
+                times[i] = times[child];
+                segments[i] = segments[child];
+                i = child;
+            }
+            times[i] = time;
+            segments[i] = segment;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites a class file compiled against {@code java.util.concurrent} to use
+ * the instrumented shims of this package, see {@link InstrumentationAgent}.
+ * <p>
+ * Class references are retargeted in the constant pool alone: every name and
+ * descriptor naming {@link java.util.concurrent.RecursiveTask},
+ * {@link java.util.concurrent.RecursiveAction},
+ * {@link java.util.concurrent.CountedCompleter},
+ * {@link java.util.concurrent.ForkJoinTask} or
+ * {@link java.util.concurrent.ForkJoinPool} is rewritten to the shim, whose
+ * methods have the same erased signatures. String literals keep their text.
+ * <p>
+ * In a direct subclass of a shim task, {@code compute} is renamed to
+ * {@code __impl_compute}, as the source rewriting used to do. A
+ * {@code RecursiveTask<V>} subclass also has a bridge {@code compute()} returning
+ * {@code Object}; it is renamed as well and pointed at the renamed method. Call
+ * sites still name {@code compute()} returning {@code V}, so a small method of
+ * that name and type is added that calls the shim's logging {@code compute()}
+ * and casts its result.
+ */
+final class ShimRemapper {
+    private static final String SHIMS = "edu/washington/cse332/autograder/concurrent/";
+    private static final String JUC = "java/util/concurrent/";
+    private static final Map<String, String> CLASSES = Map.of(
+            JUC + "RecursiveTask", SHIMS + "RecursiveTask",
+            JUC + "RecursiveAction", SHIMS + "RecursiveAction",
+            JUC + "CountedCompleter", SHIMS + "CountedCompleter",
+            JUC + "ForkJoinTask", SHIMS + "InstrumentedTask",
+            JUC + "ForkJoinPool", SHIMS + "ForkJoinPool");
+    /** Shims whose subclasses implement {@code __impl_compute}. */
+    private static final Set<String> TASKS = Set.of(SHIMS + "RecursiveTask", SHIMS + "RecursiveAction",
+            SHIMS + "CountedCompleter");
+    private static final String OBJECT_RESULT = "()Ljava/lang/Object;";
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int UTF8 = 1, LONG = 5, DOUBLE = 6, CLASS = 7, STRING = 8, METHODREF = 10,
+            NAME_AND_TYPE = 12;
+    private static final int ACC_STATIC = 0x0008, ACC_BRIDGE = 0x0040, ACC_ABSTRACT = 0x0400,
+            ACC_ACCESS = 0x0001 | 0x0002 | 0x0004;
+    private static final int ALOAD_0 = 0x2a, INVOKEVIRTUAL = 0xb6, CHECKCAST = 0xc0, ARETURN = 0xb0;
+
+    private ShimRemapper() {
+    }
+
+    /** A field or method, with its attributes as they were read. */
+    private static final class Member {
+        int flags, name, descriptor;
+        final List<Attribute> attributes = new ArrayList<>();
+    }
+
+    private record Attribute(int name, byte[] info) {
+    }
+
+    // the constant pool: a String for Utf8 entries, otherwise the tag and raw payload
+    private final List<Object> pool = new ArrayList<>();
+
+    /**
+     * @return the rewritten class file, or null if it does not use any of the
+     *         retargeted classes
+     * @throws IOException if the class file is malformed
+     */
+    static byte[] remap(byte[] classFile) throws IOException {
+        return new ShimRemapper().rewrite(classFile);
+    }
+
+    private byte[] rewrite(byte[] classFile) throws IOException {
+        final var in = new DataInputStream(new ByteArrayInputStream(classFile));
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a class file");
+        final int minor = in.readUnsignedShort(), major = in.readUnsignedShort();
+
+        final int count = in.readUnsignedShort();
+        pool.add(null);
+        boolean uses = false;
+        for (int i = 1; i < count; i++) {
+            final int tag = in.readUnsignedByte();
+            if (tag == UTF8) {
+                final var text = in.readUTF();
+                uses |= text.contains(JUC) && !remapNames(text).equals(text);
+                pool.add(text);
+                continue;
+            }
+            final var entry = new byte[1 + payloadSize(tag)];
+            entry[0] = (byte) tag;
+            in.readFully(entry, 1, entry.length - 1);
+            pool.add(entry);
+            if (tag == LONG || tag == DOUBLE) {
+                pool.add(null);
+                i++;
+            }
+        }
+        if (!uses)
+            return null;
+
+        // string literals keep their text: point them at an unchanged copy
+        for (int i = 1; i < count; i++) {
+            if (pool.get(i) instanceof byte[] entry && entry[0] == STRING) {
+                final var text = (String) pool.get(u2(entry, 1));
+                if (!remapNames(text).equals(text)) {
+                    // appended, so it is past the entries remapped below
+                    pool.add(text);
+                    final int copy = pool.size() - 1;
+                    entry[1] = (byte) (copy >> 8);
+                    entry[2] = (byte) copy;
+                }
+            }
+        }
+        for (int i = 1; i < count; i++)
+            if (pool.get(i) instanceof String text)
+                pool.set(i, remapNames(text));
+
+        final int flags = in.readUnsignedShort(), thisClass = in.readUnsignedShort(),
+                superClass = in.readUnsignedShort();
+        final var interfaces = new int[in.readUnsignedShort()];
+        for (int i = 0; i < interfaces.length; i++)
+            interfaces[i] = in.readUnsignedShort();
+        final var fields = readMembers(in);
+        final var methods = readMembers(in);
+        final var attributes = readAttributes(in);
+
+        if (superClass != 0 && TASKS.contains(className(superClass)))
+            renameCompute(thisClass, methods);
+
+        final var bytes = new ByteArrayOutputStream(classFile.length + 256);
+        final var out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(minor);
+        out.writeShort(major);
+        out.writeShort(pool.size());
+        for (int i = 1; i < pool.size(); i++) {
+            final var entry = pool.get(i);
+            if (entry instanceof String text) {
+                out.writeByte(UTF8);
+                out.writeUTF(text);
+            } else if (entry != null) {
+                out.write((byte[]) entry);
+            }
+        }
+        out.writeShort(flags);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(interfaces.length);
+        for (int i : interfaces)
+            out.writeShort(i);
+        writeMembers(out, fields);
+        writeMembers(out, methods);
+        writeAttributes(out, attributes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Renames the task's {@code compute} methods to {@code __impl_compute}, and
+     * adds the typed {@code compute} call sites expect.
+     */
+    private void renameCompute(int thisClass, List<Member> methods) throws IOException {
+        final int implName = add("__impl_compute");
+        Member typed = null;
+        Member bridge = null;
+        for (var method : methods) {
+            final var descriptor = (String) pool.get(method.descriptor);
+            if (!pool.get(method.name).equals("compute") || !(descriptor.equals("()V") || isReference(descriptor))
+                    || (method.flags & (ACC_STATIC | ACC_ABSTRACT)) != 0)
+                continue;
+            if ((method.flags & ACC_BRIDGE) != 0)
+                bridge = method;
+            else if (!descriptor.equals("()V") && !descriptor.equals(OBJECT_RESULT))
+                typed = method;
+            method.name = implName;
+        }
+        if (typed == null)
+            return;
+
+        final var descriptor = (String) pool.get(typed.descriptor);
+        if (bridge != null) {
+            // the bridge called the typed compute, which is now __impl_compute
+            final int target = add(METHODREF, thisClass, add(NAME_AND_TYPE, implName, typed.descriptor));
+            for (var attribute : bridge.attributes) {
+                if (!pool.get(attribute.name()).equals("Code"))
+                    continue;
+                final var code = attribute.info();
+                // max_stack, max_locals, code_length, then aload_0... invokevirtual
+                int pc = 8;
+                while ((code[pc] & 0xFF) == ALOAD_0)
+                    pc++;
+                if ((code[pc] & 0xFF) != INVOKEVIRTUAL)
+                    throw new IOException("Unexpected bridge method body");
+                code[pc + 1] = (byte) (target >> 8);
+                code[pc + 2] = (byte) target;
+            }
+        }
+
+        // compute()V calls the shim, which logs and runs __impl_compute
+        final int shimCompute = add(METHODREF, thisClass,
+                add(NAME_AND_TYPE, add("compute"), add(OBJECT_RESULT)));
+        // a class is named by its internal name, an array by its descriptor
+        final var result = descriptor.substring(2);
+        final int resultClass = add(CLASS,
+                add(result.startsWith("[") ? result : result.substring(1, result.length() - 1)), -1);
+        final var code = new ByteArrayOutputStream();
+        final var out = new DataOutputStream(code);
+        out.writeShort(1); // max_stack
+        out.writeShort(1); // max_locals
+        out.writeInt(8);
+        out.writeByte(ALOAD_0);
+        out.writeByte(INVOKEVIRTUAL);
+        out.writeShort(shimCompute);
+        out.writeByte(CHECKCAST);
+        out.writeShort(resultClass);
+        out.writeByte(ARETURN);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+        final var wrapper = new Member();
+        wrapper.flags = typed.flags & ACC_ACCESS;
+        wrapper.name = add("compute");
+        wrapper.descriptor = typed.descriptor;
+        wrapper.attributes.add(new Attribute(add("Code"), code.toByteArray()));
+        methods.add(wrapper);
+    }
+
+    /**
+     * @return whether a method descriptor without parameters returns an object or array
+     */
+    private static boolean isReference(String descriptor) {
+        return descriptor.startsWith("()L") || descriptor.startsWith("()[");
+    }
+
+    /**
+     * Replaces each retargeted class in a class name, descriptor or signature.
+     * Nested classes, such as {@code ForkJoinPool$ManagedBlocker}, are kept.
+     */
+    static String remapNames(String text) {
+        if (!text.contains(JUC))
+            return text;
+        final var sb = new StringBuilder(text.length() + 32);
+        int from = 0;
+        for (int at; (at = text.indexOf(JUC, from)) >= 0;) {
+            sb.append(text, from, at);
+            final int end = nameEnd(text, at);
+            final var name = text.substring(at, end);
+            final boolean whole = at == 0 || text.charAt(at - 1) == 'L';
+            final var shim = CLASSES.get(name);
+            sb.append(whole && shim != null ? shim : name);
+            from = end;
+        }
+        return sb.append(text, from, text.length()).toString();
+    }
+
+    private static int nameEnd(String text, int from) {
+        int end = from;
+        while (end < text.length() && ";<>.:()[".indexOf(text.charAt(end)) < 0)
+            end++;
+        return end;
+    }
+
+    private String className(int classIndex) {
+        return (String) pool.get(u2((byte[]) pool.get(classIndex), 1));
+    }
+
+    /**
+     * @return index of a Utf8 constant with the text, appended if missing
+     */
+    private int add(String text) {
+        final int existing = pool.indexOf(text);
+        if (existing > 0)
+            return existing;
+        pool.add(text);
+        return pool.size() - 1;
+    }
+
+    /**
+     * @param second second u2 of the payload, or -1 for entries with one
+     * @return index of a new constant of the given tag
+     */
+    private int add(int tag, int first, int second) {
+        final var entry = new byte[second < 0 ? 3 : 5];
+        entry[0] = (byte) tag;
+        entry[1] = (byte) (first >> 8);
+        entry[2] = (byte) first;
+        if (second >= 0) {
+            entry[3] = (byte) (second >> 8);
+            entry[4] = (byte) second;
+        }
+        pool.add(entry);
+        return pool.size() - 1;
+    }
+
+    private static int payloadSize(int tag) throws IOException {
+        return switch (tag) {
+            case 7, 8, 16, 19, 20 -> 2; // Class, String, MethodType, Module, Package
+            case 15 -> 3; // MethodHandle
+            case 3, 4, 9, 10, 11, 12, 17, 18 -> 4; // Integer, Float, refs, NameAndType, (Invoke)Dynamic
+            case 5, 6 -> 8; // Long, Double
+            default -> throw new IOException("Unknown constant pool tag " + tag);
+        };
+    }
+
+    private static int u2(byte[] bytes, int at) {
+        return (bytes[at] & 0xFF) << 8 | bytes[at + 1] & 0xFF;
+    }
+
+    private static List<Member> readMembers(DataInputStream in) throws IOException {
+        final var members = new ArrayList<Member>();
+        for (int count = in.readUnsignedShort(); count > 0; count--) {
+            final var member = new Member();
+            member.flags = in.readUnsignedShort();
+            member.name = in.readUnsignedShort();
+            member.descriptor = in.readUnsignedShort();
+            member.attributes.addAll(readAttributes(in));
+            members.add(member);
+        }
+        return members;
+    }
+
+    private static List<Attribute> readAttributes(DataInputStream in) throws IOException {
+        final var attributes = new ArrayList<Attribute>();
+        for (int count = in.readUnsignedShort(); count > 0; count--) {
+            final int name = in.readUnsignedShort();
+            final var info = new byte[in.readInt()];
+            in.readFully(info);
+            attributes.add(new Attribute(name, info));
+        }
+        return attributes;
+    }
+
+    private static void writeMembers(DataOutputStream out, List<Member> members) throws IOException {
+        out.writeShort(members.size());
+        for (var member : members) {
+            out.writeShort(member.flags);
+            out.writeShort(member.name);
+            out.writeShort(member.descriptor);
+            writeAttributes(out, member.attributes);
+        }
+    }
+
+    private static void writeAttributes(DataOutputStream out, List<Attribute> attributes) throws IOException {
+        out.writeShort(attributes.size());
+        for (var attribute : attributes) {
+            out.writeShort(attribute.name());
+            out.writeInt(attribute.info().length);
+            out.write(attribute.info());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package edu.washington.cse332.autograder.concurrent;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Draws predicted speedup over the number of processors as an SVG line chart.
+ */
+final class SpeedupChart {
+    private SpeedupChart() {
+        // prevent instantiation
+    }
+
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 320;
+    private static final int MARGIN = 48;
+
+    /**
+     * @param greedy      predictions of {@link SchedulePrediction.Scheduler#GREEDY}
+     * @param stealing    predictions of {@link SchedulePrediction.Scheduler#WORK_STEALING}
+     * @param parallelism work / span, the best speedup any number of processors can reach
+     * @return an SVG document
+     */
+    static String toSVG(List<SchedulePrediction> greedy, List<SchedulePrediction> stealing, double parallelism) {
+        final int maxP = Math.max(2, greedy.size());
+        final double maxSpeedup = Math.max(1, Math.min(maxP, Math.ceil(parallelism)));
+
+        final var sb = new StringBuilder();
+        sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(WIDTH).append("\" height=\"")
+                .append(HEIGHT).append("\" font-family=\"sans-serif\" font-size=\"11\">\n");
+        sb.append("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+
+        // axes and ticks
+        final int x0 = MARGIN, y0 = HEIGHT - MARGIN, x1 = WIDTH - MARGIN / 2, y1 = MARGIN / 2;
+        sb.append(String.format(Locale.ROOT, "<polyline points=\"%d,%d %d,%d %d,%d\" fill=\"none\" stroke=\"black\"/>%n",
+                x0, y1, x0, y0, x1, y0));
+        for (int p = 1; p <= maxP; p += Math.max(1, maxP / 8))
+            sb.append(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%d\" text-anchor=\"middle\">%d</text>%n",
+                    x(p, maxP), y0 + 14, p));
+        for (int i = 0; i <= 4; i++) {
+            final double s = maxSpeedup * i / 4;
+            sb.append(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%.1f\" text-anchor=\"end\">%.1f</text>%n",
+                    x0 - 4, y(s, maxSpeedup) + 4, s));
+        }
+        sb.append(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" text-anchor=\"middle\">processors</text>%n",
+                (x0 + x1) / 2, HEIGHT - 8));
+        sb.append(String.format(Locale.ROOT,
+                "<text x=\"12\" y=\"%d\" text-anchor=\"middle\" transform=\"rotate(-90 12 %d)\">speedup</text>%n",
+                (y0 + y1) / 2, (y0 + y1) / 2));
+
+        // ideal: linear until the parallelism is used up
+        sb.append("<polyline fill=\"none\" stroke=\"gray\" stroke-dasharray=\"4 3\" points=\"");
+        for (int p = 1; p <= maxP; p++)
+            sb.append(String.format(Locale.ROOT, "%.1f,%.1f ", x(p, maxP), y(Math.min(p, parallelism), maxSpeedup)));
+        sb.append("\"/>\n");
+        appendLine(sb, greedy, maxP, maxSpeedup, "steelblue");
+        appendLine(sb, stealing, maxP, maxSpeedup, "darkorange");
+
+        // legend
+        final String[][] legend = { { "gray", "work / span" }, { "steelblue", "greedy" },
+                { "darkorange", "work stealing" } };
+        for (int i = 0; i < legend.length; i++) {
+            final int ly = y1 + 4 + 14 * i;
+            sb.append(String.format(Locale.ROOT,
+                    "<line x1=\"%d\" y1=\"%d\" x2=\"%d\" y2=\"%d\" stroke=\"%s\" stroke-width=\"2\"/>"
+                            + "<text x=\"%d\" y=\"%d\">%s</text>%n",
+                    x0 + 12, ly, x0 + 32, ly, legend[i][0], x0 + 38, ly + 4, legend[i][1]));
+        }
+        sb.append("</svg>\n");
+        return sb.toString();
+    }
+
+    private static void appendLine(StringBuilder sb, List<SchedulePrediction> predictions, int maxP,
+            double maxSpeedup, String color) {
+        sb.append("<polyline fill=\"none\" stroke-width=\"2\" stroke=\"").append(color).append("\" points=\"");
+        for (var prediction : predictions)
+            sb.append(String.format(Locale.ROOT, "%.1f,%.1f ", x(prediction.processors(), maxP),
+                    y(prediction.speedup(), maxSpeedup)));
+        sb.append("\"/>\n");
+    }
+
+    private static double x(double processors, int maxP) {
+        return MARGIN + (processors - 1) / (maxP - 1) * (WIDTH - MARGIN * 1.5);
+    }
+
+    private static double y(double speedup, double maxSpeedup) {
+        return HEIGHT - MARGIN - Math.min(speedup, maxSpeedup) / maxSpeedup * (HEIGHT - MARGIN * 1.5);
+    }
+}
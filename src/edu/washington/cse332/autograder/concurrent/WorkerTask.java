@@ -0,0 +1,35 @@
+package edu.washington.cse332.autograder.concurrent;
+
+/**
+ * Runs an {@link InstrumentedTask} on a worker of a real
+ * {@link java.util.concurrent.ForkJoinPool}, with the worker's own recorder as
+ * the thread's analyzer. See {@link AnalysisOptions#withParallelism(int)}.
+ *
+ * @param <T> output type, if applicable
+ */
+final class WorkerTask<T> extends java.util.concurrent.RecursiveTask<T> {
+    private static final long serialVersionUID = 1L;
+
+    private final transient InstrumentedTask<T> task;
+    private final transient ForkJoinAnalyzer session;
+
+    WorkerTask(InstrumentedTask<T> task, ForkJoinAnalyzer session) {
+        this.task = task;
+        this.session = session;
+    }
+
+    @Override
+    protected T compute() {
+        final var previous = ForkJoinAnalyzer.shared();
+        final var recorder = session.workerFor(java.lang.Thread.currentThread());
+        ForkJoinAnalyzer.setShared(recorder);
+        // a worker waiting in join may run this task in the middle of another one
+        final long executing = recorder.getExecutingTaskId();
+        try {
+            return task.execute();
+        } finally {
+            recorder.setExecutingTaskId(executing);
+            ForkJoinAnalyzer.setShared(previous);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package edu.washington.cse332.autograder.config;
+
+/**
+ * <p>Enum representing the engine used to render DOT graphs into images.</p>
+ */
+public enum GraphRenderer {
+    /**
+     * The external GraphViz {@code dot} binary, producing webp images.
+     */
+    DOT,
+    /**
+     * The in-process layered layout engine, producing SVG images. No subprocess is spawned.
+     */
+    JAVA,
+    /**
+     * {@link #DOT} if the binary is available, {@link #JAVA} otherwise.
+     */
+    AUTO
+}